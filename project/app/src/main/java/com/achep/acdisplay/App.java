@@ -22,6 +22,9 @@ import android.app.Application;
 import android.content.Context;
 
 import com.achep.acdisplay.blacklist.Blacklist;
+import com.achep.acdisplay.notifications.PackageContextCache;
+import com.achep.acdisplay.utils.BitmapPool;
+import com.achep.acdisplay.utils.BitmapUtils;
 import com.achep.acdisplay.utils.ToastUtils;
 
 /**
@@ -44,6 +47,7 @@ public class App extends Application {
     public void onCreate() {
         Config.getInstance().init(this);
         Blacklist.getInstance().init(this);
+        PackageContextCache.getInstance().init(this);
 
         super.onCreate();
     }
@@ -53,6 +57,9 @@ public class App extends Application {
         super.onLowMemory();
         Config.getInstance().onLowMemory();
         Blacklist.getInstance().onLowMemory();
+        PackageContextCache.getInstance().clear();
+        BitmapPool.getInstance().clear();
+        BitmapUtils.trimMemory();
     }
 
     /**
@@ -49,6 +49,14 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
     public static final String KEY_USED_ITEM = KEY_PREFIX + "used_";
 
     private HashMap<V, Integer> mList;
+
+    /**
+     * Maps objects to their instances stored in {@link #mList list},
+     * so we don't need to iterate over all keys to find them.
+     *
+     * @see #find(Object)
+     */
+    private HashMap<V, V> mObjects;
     private ArrayList<Integer> mPlaceholder;
 
     private ArrayList<OnSharedListChangedListener<V>> mListeners;
@@ -160,6 +168,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
 
     protected void init(Context context) {
         mList = new HashMap<>();
+        mObjects = new HashMap<>();
         mPlaceholder = new ArrayList<>(3);
         mListeners = new ArrayList<>(6);
 
@@ -173,6 +182,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
                 // Create previously saved object.
                 V object = mSaver.get(prefs, i);
                 mList.put(object, i);
+                mObjects.put(object, object);
             } else {
                 // This is an empty place which we can re-use
                 // later.
@@ -250,7 +260,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
             return;
         }
 
-        V objectRemoved = find(object);
+        V objectRemoved = mObjects.remove(object);
         int pos = mList.remove(object);
 
         // Put the position of newly removed object
@@ -306,6 +316,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
             // and pop it out.
             pos = mList.get(old);
             mList.remove(old);
+            mObjects.remove(old);
         } else {
 
             // Increase the size of the list if there no
@@ -322,6 +333,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
         }
 
         mList.put(object, pos);
+        mObjects.put(object, object);
         createRecyclableFields();
 
         // Save object to internal memory.
@@ -335,13 +347,13 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements IO
         return old;
     }
 
-    private V find(V object) {
-        for (V o : mList.keySet()) {
-            if (o.equals(object)) {
-                return o;
-            }
-        }
-        return null;
+    /**
+     * @return the instance of given object stored in this list, or {@code null}
+     * if the list doesn't contain it.
+     */
+    @Nullable
+    protected V find(V object) {
+        return mObjects.get(object);
     }
 
     /**
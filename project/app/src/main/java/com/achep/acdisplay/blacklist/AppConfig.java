@@ -21,9 +21,6 @@ package com.achep.acdisplay.blacklist;
 import android.content.SharedPreferences;
 import android.util.Log;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
-
 /**
  * <b>Attention: its equality key is package name only!<b/>
  *
@@ -108,9 +105,9 @@ public class AppConfig {
      */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(279, 351)
-                .append(packageName)
-                .toHashCode();
+        // Same as HashCodeBuilder(279, 351).append(packageName)
+        // does, but without allocating a builder.
+        return 279 * 351 + (packageName != null ? packageName.hashCode() : 0);
     }
 
     /**
@@ -125,9 +122,9 @@ public class AppConfig {
             return false;
 
         AppConfig ps = (AppConfig) o;
-        return new EqualsBuilder()
-                .append(packageName, ps.packageName)
-                .isEquals();
+        return packageName == null
+                ? ps.packageName == null
+                : packageName.equals(ps.packageName);
     }
 
     /**
@@ -200,6 +197,84 @@ public class AppConfig {
                 && isDontOverlayEnabled() == AppConfig.DEFAULT_DONT_OVERLAY;
     }
 
+    /**
+     * Read-only copy of the {@link AppConfig app config}. It holds the values
+     * of options rather than the arrays of config, so neither changing the
+     * original config nor anything else can change it, and it may be read
+     * from any thread.
+     *
+     * @author Artem Chepurnoy
+     * @see Blacklist#getAppConfigSnapshot(String)
+     */
+    public static final class Snapshot {
+
+        private final String mPackageName;
+        private final boolean mRestricted;
+        private final boolean mHidden;
+        private final boolean mNonClearable;
+        private final boolean mDontOverlay;
+
+        Snapshot(AppConfig config) {
+            mPackageName = config.packageName;
+            mRestricted = config.isRestricted();
+            mHidden = config.isHidden();
+            mNonClearable = config.isNonClearableEnabled();
+            mDontOverlay = config.isDontOverlayEnabled();
+        }
+
+        /**
+         * Copies data of this snapshot into given config.
+         *
+         * @return given config
+         */
+        AppConfig copyTo(AppConfig config) {
+            config.packageName = mPackageName;
+            config.setRestricted(mRestricted);
+            config.setHidden(mHidden);
+            config.setNonClearableEnabled(mNonClearable);
+            config.setDontOverlayEnabled(mDontOverlay);
+            return config;
+        }
+
+        public String getPackageName() {
+            return mPackageName;
+        }
+
+        public boolean isRestricted() {
+            return mRestricted;
+        }
+
+        public boolean isHidden() {
+            return mHidden;
+        }
+
+        /**
+         * @see AppConfig#isNonClearableEnabled()
+         */
+        public boolean isNonClearableEnabled() {
+            return mNonClearable;
+        }
+
+        public boolean isDontOverlayEnabled() {
+            return mDontOverlay;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "AppConfig.Snapshot ["
+                    + "restricted=" + mRestricted
+                    + " hidden=" + mHidden
+                    + " non-clearable=" + mNonClearable
+                    + " dont_overlay=" + mDontOverlay
+                    + " pkg=" + mPackageName
+                    + "]";
+        }
+
+    }
+
     /**
      * Saves and restores AppConfig from and to shared preferences.
      *
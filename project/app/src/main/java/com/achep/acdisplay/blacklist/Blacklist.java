@@ -25,12 +25,15 @@ import android.util.Log;
 
 import com.achep.acdisplay.SharedList;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * The blacklist (also known as per-app-features.)
  *
  * @author Artem Chepurnoy
  * @see #saveAppConfig(android.content.Context, AppConfig, SharedList.OnSharedListChangedListener)
  * @see #getAppConfig(String)
+ * @see #getAppConfigSnapshot(String)
  */
 public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
 
@@ -40,6 +43,21 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
 
     private static Blacklist sBlacklist;
 
+    /**
+     * Shared config of all applications that are not in the blacklist.
+     *
+     * @see #getAppConfigSnapshot(String)
+     */
+    private static final AppConfig.Snapshot DEFAULT_APP_CONFIG =
+            new AppConfig.Snapshot(new AppConfig(null));
+
+    /**
+     * Maps package names to the {@link AppConfig.Snapshot snapshots} of configs stored
+     * in this list. Snapshots are replaced on write, so they may be read from any thread.
+     */
+    private final ConcurrentHashMap<String, AppConfig.Snapshot> mConfigMap =
+            new ConcurrentHashMap<>();
+
     /**
      * Interface definition for a callback to be invoked
      * when a blacklist changed.
@@ -98,6 +116,11 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
     @Override
     public void init(Context context) {
         super.init(context);
+
+        mConfigMap.clear();
+        for (AppConfig config : valuesSet()) {
+            mConfigMap.put(config.packageName, new AppConfig.Snapshot(config));
+        }
     }
 
     /**
@@ -139,12 +162,14 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
         if (config.equalsToDefault()) {
 
             // We need to remove defaults to save blacklist's size.
+            mConfigMap.remove(config.packageName);
             super.remove(context, config, listener);
             return;
         }
 
         AppConfig clone = new AppConfig(config.packageName);
         AppConfig.copy(config, clone);
+        mConfigMap.put(clone.packageName, new AppConfig.Snapshot(clone));
         super.put(context, clone, listener); // overwriting is enabled.
     }
 
@@ -163,16 +188,34 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
 
     @NonNull
     public AppConfig fill(@NonNull AppConfig config) {
-        for (AppConfig c : valuesSet()) {
-            if (c.equals(config)) {
-                AppConfig.copy(c, config);
-                return config;
-            }
+        AppConfig.Snapshot c = config.packageName != null
+                ? mConfigMap.get(config.packageName)
+                : null;
+        if (c != null) {
+            return c.copyTo(config);
         }
         AppConfig.reset(config);
         return config;
     }
 
+    /**
+     * Returns the read-only snapshot of config of given application without creating
+     * a new one. It's safe to call this from any thread. Use {@link #getAppConfig(String)}
+     * if you need to change the config.
+     * <p>
+     * Note, that the {@link AppConfig.Snapshot#getPackageName() package name} of returned
+     * snapshot is {@code null} if the app is not in the blacklist.
+     * </p>
+     *
+     * @param packageName The package name of need application.
+     * @return Read-only snapshot of app's config.
+     */
+    @NonNull
+    public AppConfig.Snapshot getAppConfigSnapshot(@NonNull String packageName) {
+        AppConfig.Snapshot config = mConfigMap.get(packageName);
+        return config != null ? config : DEFAULT_APP_CONFIG;
+    }
+
     //-- BULL SHIT PROTECTION -------------------------------------------------
 
     /**
@@ -550,7 +550,8 @@ public class BlacklistActivity extends PreferenceActivity {
 
                 case HEADER_TYPE_NORMAL:
                     String packageName = "" + header.summary;
-                    AppConfig config = Blacklist.getInstance().getAppConfig(packageName);
+                    AppConfig.Snapshot config =
+                            Blacklist.getInstance().getAppConfigSnapshot(packageName);
 
                     // Show checked options in summary.
                     // TODO: Find the way to optimize it.
@@ -126,7 +126,9 @@ public abstract class Option extends Blacklist.OnBlacklistChangedListener implem
             @NonNull AppConfig configNew,
             @NonNull AppConfig configOld, int diff) {
         if (configOld.equals(mAppConfig)) {
-            mAppConfig = configNew;
+            // Do not keep the link to the config from blacklist,
+            // because we're changing this one.
+            AppConfig.copy(configNew, mAppConfig);
             if (Operator.bitAnd(diff, getDiffMask())) {
                 setChecked(getValue(configNew)[0]);
             }
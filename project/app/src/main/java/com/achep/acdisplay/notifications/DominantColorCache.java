@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.achep.acdisplay.Build;
+import com.achep.acdisplay.utils.BitmapPool;
+import com.achep.acdisplay.utils.BitmapUtils;
+
+/**
+ * Caches the dominant colors of applications' icons. Colors are persisted to
+ * private storage together with the version code of the app, so the icon is
+ * rasterized only once per app's update. Colors that were validated against
+ * installed version are kept in memory with LRU eviction, and are invalidated
+ * by {@link PackageContextCache} when the package changes.
+ *
+ * @author Artem Chepurnoy
+ */
+public final class DominantColorCache {
+
+    private static final String TAG = "DominantColorCache";
+
+    public static final String PREF_NAME = "dominant_colors";
+
+    private static final int MAX_SIZE = 64;
+
+    /**
+     * The size of the rasterized icon, in pixels. The palette scales
+     * bitmaps down anyway, so there's no need for a larger one.
+     */
+    private static final int ICON_SIZE = 48;
+
+    private static DominantColorCache sInstance;
+
+    /**
+     * Maps the package name to the dominant color of its icon. Contains
+     * only colors of the installed versions of apps.
+     */
+    private final LruCache<String, Integer> mCache = new LruCache<>(MAX_SIZE);
+
+    public static synchronized DominantColorCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DominantColorCache();
+        }
+        return sInstance;
+    }
+
+    private DominantColorCache() { /* empty */ }
+
+    /**
+     * Returns the dominant color of given application's icon, calculating it
+     * only if there's no cached value for current version of the app.
+     *
+     * @param packageName the package name of need application.
+     * @throws PackageManager.NameNotFoundException if there's no such package.
+     */
+    public int getDominantColor(@NonNull Context context, @NonNull String packageName)
+            throws PackageManager.NameNotFoundException {
+        Integer cached = mCache.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+
+        PackageManager pm = context.getPackageManager();
+        final int versionCode = pm.getPackageInfo(packageName, 0).versionCode;
+
+        // Value stores the version code in high 32 bits and
+        // the color in low 32 bits.
+        SharedPreferences prefs = getSharedPreferences(context);
+        long value = prefs.getLong(packageName, 0);
+        if (prefs.contains(packageName) && (int) (value >>> 32) == versionCode) {
+            final int color = (int) value;
+            mCache.put(packageName, color);
+            return color;
+        }
+
+        // Rasterize the icon and calculate its dominant color.
+        Drawable appIcon = pm.getApplicationIcon(packageName);
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap bitmap = pool.obtain(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        appIcon.setBounds(0, 0, ICON_SIZE, ICON_SIZE);
+        appIcon.draw(new Canvas(bitmap));
+        final int color = BitmapUtils.getDominantColor(bitmap);
+        pool.release(bitmap);
+
+        if (Build.DEBUG) Log.d(TAG, "Calculated the dominant color of " + packageName);
+
+        value = ((long) versionCode << 32) | (color & 0xFFFFFFFFL);
+        prefs.edit().putLong(packageName, value).apply();
+        mCache.put(packageName, color);
+        return color;
+    }
+
+    /**
+     * Invalidates the color of given package.
+     *
+     * @param uninstalled {@code true} if the package was uninstalled, so its persisted
+     *                    color should be removed too, {@code false} otherwise.
+     */
+    public void removePackage(@NonNull Context context, @NonNull String packageName,
+                              boolean uninstalled) {
+        mCache.remove(packageName);
+        if (uninstalled) {
+            getSharedPreferences(context).edit().remove(packageName).apply();
+        }
+    }
+
+    private SharedPreferences getSharedPreferences(@NonNull Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.achep.acdisplay.Build;
+
+import java.util.HashMap;
+
+/**
+ * Throttles the storms of notification updates: the first update of
+ * a notification is passed through immediately, next updates with the
+ * same {@link OpenNotification#getKey() key} within the {@link #setWindow(long) window}
+ * are collapsed to the latest one, which is passed at the end of the window.
+ * Superseded updates are dropped before any parsing happens.
+ * <p>
+ * All methods must be called on the thread of the given {@link Handler}.
+ * </p>
+ *
+ * @author Artem Chepurnoy
+ */
+public class NotificationCoalescer {
+
+    private static final String TAG = "NotificationCoalescer";
+
+    /**
+     * Default coalescing window.
+     *
+     * @see #setWindow(long)
+     */
+    public static final long DEFAULT_WINDOW = 300; // ms.
+
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final HashMap<String, Record> mRecords = new HashMap<>();
+
+    private long mWindow = DEFAULT_WINDOW;
+
+    private volatile int mProcessedCount;
+    private volatile int mCoalescedCount;
+
+    /**
+     * Interface definition for a callback to be invoked
+     * when an update of notification should be handled.
+     */
+    public interface Callback {
+
+        /**
+         * Called when the update of notification has passed through the coalescer.
+         *
+         * @param n    the latest instance of notification.
+         * @param post {@code true} if notification was posted, {@code false} if removed.
+         */
+        public void onNotificationReady(@NonNull OpenNotification n, boolean post);
+
+    }
+
+    private class Record implements Runnable {
+
+        private final String key;
+
+        private long time;
+        private OpenNotification pending;
+
+        public Record(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            if (pending != null) {
+                OpenNotification n = pending;
+                pending = null;
+                time = SystemClock.uptimeMillis();
+                mHandler.postAtTime(this, time + mWindow);
+                dispatch(n, true);
+            } else {
+                mRecords.remove(key);
+            }
+        }
+    }
+
+    public NotificationCoalescer(@NonNull Handler handler, @NonNull Callback callback) {
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the window in which updates of one notification are collapsed.
+     * Zero or negative value disables coalescing.
+     *
+     * @param window the window in millis.
+     */
+    public void setWindow(long window) {
+        mWindow = window;
+    }
+
+    /**
+     * @return the number of updates passed through the coalescer.
+     */
+    public int getProcessedCount() {
+        return mProcessedCount;
+    }
+
+    /**
+     * @return the number of updates dropped because they were superseded by newer ones.
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Enqueues an update of notification.
+     *
+     * @param n    new instance of notification.
+     * @param post {@code true} if notification was posted, {@code false} if removed.
+     */
+    public void enqueue(@NonNull OpenNotification n, boolean post) {
+        final String key = n.getKey();
+        Record record = mRecords.get(key);
+
+        if (!post) {
+            // Removing a notification supersedes all of
+            // its pending updates.
+            if (record != null) {
+                mHandler.removeCallbacks(record);
+                mRecords.remove(key);
+                if (record.pending != null) mCoalescedCount++;
+            }
+
+            dispatch(n, false);
+            return;
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        if (mWindow <= 0) {
+            dispatch(n, true);
+        } else if (record == null) {
+            record = new Record(key);
+            record.time = now;
+            mRecords.put(key, record);
+            mHandler.postAtTime(record, now + mWindow);
+            dispatch(n, true);
+        } else {
+            if (record.pending != null) {
+                mCoalescedCount++;
+                if (Build.DEBUG) Log.d(TAG, "Coalesced an update of " + key
+                        + " [coalesced=" + mCoalescedCount
+                        + " processed=" + mProcessedCount + "]");
+            }
+
+            record.pending = n;
+            mHandler.removeCallbacks(record);
+            mHandler.postAtTime(record, Math.max(now, record.time + mWindow));
+        }
+    }
+
+    /**
+     * Drops all pending updates.
+     */
+    public void clear() {
+        for (Record record : mRecords.values()) {
+            mHandler.removeCallbacks(record);
+        }
+        mRecords.clear();
+    }
+
+    private void dispatch(@NonNull OpenNotification n, boolean post) {
+        mProcessedCount++;
+        mCallback.onNotificationReady(n, post);
+    }
+
+}
@@ -18,14 +18,9 @@
  */
 package com.achep.acdisplay.notifications;
 
-import android.app.Notification;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.drawable.Drawable;
 import android.os.SystemClock;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
@@ -34,6 +29,7 @@ import com.achep.acdisplay.AsyncTask;
 import com.achep.acdisplay.Build;
 import com.achep.headsup.R;
 import com.achep.acdisplay.notifications.parser.Extractor;
+import com.achep.acdisplay.utils.BitmapPool;
 import com.achep.acdisplay.utils.BitmapUtils;
 
 import java.lang.ref.WeakReference;
@@ -49,6 +45,8 @@ public class NotificationData {
     public static final int ICON = 1;
     public static final int READ = 2;
 
+    // Texts are filled by the extractor, use getters to read them:
+    // they parse the notification on first access.
     public CharSequence titleBigText;
     public CharSequence titleText;
     public CharSequence messageText;
@@ -57,12 +55,27 @@ public class NotificationData {
     public CharSequence subText;
     public CharSequence summaryText;
 
-    public Action[] actions;
+    private Action[] actions;
 
     private Bitmap icon;
     private Bitmap circleIcon;
+    private int largeIconColor;
+    private int appColor;
 
-    public int dominantColor;
+    private long fingerprint;
+
+    /**
+     * The source of the lazily loaded fields.
+     */
+    private Context mContext;
+    private OpenNotification mNotification;
+
+    private boolean mTextsLoaded;
+    private boolean mActionsLoaded;
+    private boolean mIconLoaded;
+    private boolean mCircleIconLoaded;
+    private boolean mLargeIconColorLoaded;
+    private boolean mAppColorLoaded;
 
     /**
      * The number of events that this notification represents. For example, in a new mail
@@ -79,25 +92,140 @@ public class NotificationData {
     public int number;
     public boolean isRead;
 
+    public CharSequence getTitleBigText() {
+        loadTexts();
+        return titleBigText;
+    }
+
+    public CharSequence getTitleText() {
+        loadTexts();
+        return titleText;
+    }
+
+    public CharSequence getMessageText() {
+        loadTexts();
+        return messageText;
+    }
+
+    public CharSequence[] getMessageTextLines() {
+        loadTexts();
+        return messageTextLines;
+    }
+
+    public CharSequence getInfoText() {
+        loadTexts();
+        return infoText;
+    }
+
+    public CharSequence getSubText() {
+        loadTexts();
+        return subText;
+    }
+
+    public CharSequence getSummaryText() {
+        loadTexts();
+        return summaryText;
+    }
+
+    /**
+     * @return the 64-bit hash of the number and the main texts of notification:
+     * title, big title, message and info. Notifications with equal fingerprints
+     * look the same to user.
+     */
+    public long getFingerprint() {
+        loadTexts();
+        return fingerprint;
+    }
+
+    public synchronized Action[] getActions() {
+        if (!mActionsLoaded && mNotification != null) {
+            mActionsLoaded = true;
+            actions = Action.getFactory().create(mNotification.getNotification());
+        }
+        return actions;
+    }
+
     /**
      * @return small notification icon with corrected size and color.
-     * This may return null if icon is still loading.
+     * This may return null if icon is still loading: the loading starts
+     * on first call. The icon is owned by this data and released on
+     * {@link #recycle()}, so acquire it to keep it longer.
      */
     public Bitmap getIcon() {
+        loadIcon();
         return icon;
     }
 
+    /**
+     * @return the circle-cropped large icon of notification, or {@code null}
+     * if it has no large icon or the large icon is not a profile photo.
+     * The icon is loaded on first call.
+     * @see #loadCircleIcon()
+     */
     public Bitmap getCircleIcon() {
+        loadCircleIcon();
         return circleIcon;
     }
 
+    /**
+     * @return the {@link BitmapUtils#getDominantColor(Bitmap) dominant color} of
+     * notification's large icon, or {@link android.graphics.Color#TRANSPARENT}
+     * if it has no large icon. The color is calculated on first call.
+     * @see #loadVisuals()
+     */
+    public synchronized int getLargeIconColor() {
+        if (!mLargeIconColorLoaded && mNotification != null) {
+            mLargeIconColorLoaded = true;
+
+            Bitmap bitmap = mNotification.getNotification().largeIcon;
+            largeIconColor = bitmap != null ? BitmapUtils.getDominantColor(bitmap) : 0;
+        }
+        return largeIconColor;
+    }
+
+    /**
+     * @return the {@link DominantColorCache dominant color} of the icon of
+     * notification's app, or {@link android.graphics.Color#TRANSPARENT}
+     * if it can not be loaded. The color is loaded on first call.
+     * @see #loadVisuals()
+     */
+    public synchronized int getAppColor() {
+        if (!mAppColorLoaded && mNotification != null) {
+            mAppColorLoaded = true;
+
+            String packageName = mNotification.getPackageName();
+            try {
+                appColor = DominantColorCache.getInstance().getDominantColor(mContext, packageName);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Failed to load the color of " + packageName);
+                appColor = 0;
+            }
+        }
+        return appColor;
+    }
+
     public void recycle() {
         AsyncTask.stop(mIconLoader);
 
-        // All those bitmaps can be displayed at this moment.
-        // BitmapUtils.safelyRecycle(background);
-        // BitmapUtils.safelyRecycle(circleIcon);
-        // BitmapUtils.safelyRecycle(icon);
+        synchronized (this) {
+            releaseIcons();
+
+            // Late visual preparation or views must not
+            // load the icons again.
+            mIconLoaded = true;
+            mCircleIconLoaded = true;
+        }
+    }
+
+    /**
+     * Releases the icons owned by this data. Those bitmaps can be
+     * displayed at this moment, but views keep them acquired from the pool.
+     */
+    private void releaseIcons() {
+        BitmapPool.getInstance().release(circleIcon);
+        BitmapPool.getInstance().release(icon);
+        circleIcon = null;
+        icon = null;
     }
 
     // //////////////////////////////////////////
@@ -137,55 +265,152 @@ public class NotificationData {
         notifyListeners(READ);
     }
 
+    /**
+     * Sets the icon, taking the ownership of one reference to it
+     * and releasing the previous icon.
+     */
     private void setIcon(Bitmap bitmap) {
-        if (icon == (icon = bitmap)) return;
-        notifyListeners(ICON);
+        final Bitmap old;
+        synchronized (this) {
+            old = icon;
+            icon = bitmap;
+        }
+
+        // Let the listeners acquire new icon before
+        // the old one is released.
+        if (old != bitmap) notifyListeners(ICON);
+        BitmapPool.getInstance().release(old);
     }
 
     /**
-     * Loads the circle icon of this notification.
-     *
-     * @see #clearCircleIcon()
+     * Loads the circle icon of this notification, if it's not loaded yet.
      */
-    public void loadCircleIcon(OpenNotification n) {
-        Bitmap bitmapIcon = n.getNotification().largeIcon;
+    public synchronized void loadCircleIcon() {
+        if (mCircleIconLoaded || mNotification == null) return;
+        mCircleIconLoaded = true;
+
+        Bitmap bitmapIcon = mNotification.getNotification().largeIcon;
         if (bitmapIcon != null && !BitmapUtils.hasTransparentCorners(bitmapIcon)) {
-            circleIcon = BitmapUtils.createCircleBitmap(bitmapIcon);
+            // Apps may attach icons of any size, but it's
+            // displayed at the fixed one.
+            final int size = mContext.getResources().getDimensionPixelSize(
+                    R.dimen.notification_large_icon_size);
+            circleIcon = BitmapUtils.createCircleBitmap(bitmapIcon, size, null);
         }
     }
 
     /**
-     * Frees the circle icon of this notification.
+     * Loads everything needed to draw this notification: the color of the app,
+     * the circle icon, or the color of the large icon if it's not a profile photo.
+     * Nothing is loaded twice.
+     *
+     * @see #getAppColor()
+     * @see #getCircleIcon()
+     * @see #getLargeIconColor()
      */
-    public void clearCircleIcon() {
-        if (circleIcon != null) {
-            circleIcon.recycle();
-            circleIcon = null;
-        }
+    public synchronized void loadVisuals() {
+        getAppColor();
+        loadCircleIcon();
+        if (circleIcon == null) getLargeIconColor();
     }
 
+    /**
+     * Binds this data to given notification. Most of the fields are loaded
+     * lazily, on first access, so notifications that are never shown don't
+     * pay for parsing actions and loading icons.
+     */
     public void loadNotification(Context context, OpenNotification sbn, boolean isRead) {
-        Notification notification = sbn.getNotification();
-        actions = Action.getFactory().create(notification);
-        number = notification.number;
+        AsyncTask.stop(mIconLoader);
+
+        synchronized (this) {
+            // Icons of previous notification are reloaded lazily
+            // too, so drop the references to them.
+            releaseIcons();
+
+            mContext = context.getApplicationContext();
+            mNotification = sbn;
+            mTextsLoaded = false;
+            mActionsLoaded = false;
+            mIconLoaded = false;
+            mCircleIconLoaded = false;
+            mLargeIconColorLoaded = false;
+            mAppColorLoaded = false;
+
+            titleBigText = null;
+            titleText = null;
+            messageText = null;
+            messageTextLines = null;
+            infoText = null;
+            subText = null;
+            summaryText = null;
+            actions = null;
+            largeIconColor = 0;
+            appColor = 0;
+            fingerprint = 0;
+        }
+
+        number = sbn.getNotification().number;
         markAsRead(isRead);
+    }
 
-        try {
-            String packageName = sbn.getPackageName();
-            Drawable appIcon = context.getPackageManager().getApplicationIcon(packageName);
+    /**
+     * Parses the texts of notification, if they're not parsed yet.
+     * Getters of the texts call this automatically.
+     */
+    public synchronized void loadTexts() {
+        if (mTextsLoaded || mNotification == null) return;
+        mTextsLoaded = true;
+        sExtractor.loadTexts(mContext, mNotification, this);
+
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ number) * FNV_PRIME;
+        hash = hash(hash, titleText);
+        hash = hash(hash, titleBigText);
+        hash = hash(hash, messageText);
+        hash = hash(hash, infoText);
+        fingerprint = hash;
+    }
 
-            Bitmap bitmap = Bitmap.createBitmap(
-                    appIcon.getMinimumWidth(),
-                    appIcon.getMinimumHeight(),
-                    Bitmap.Config.ARGB_4444);
-            appIcon.draw(new Canvas(bitmap));
-            dominantColor = BitmapUtils.getDominantColor(bitmap);
-            bitmap.recycle();
-        } catch (PackageManager.NameNotFoundException e) { /* do nothing */ }
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
-        sExtractor.loadTexts(context, sbn, this);
+    /**
+     * Mixes given text into the FNV-1a hash. The length is mixed
+     * first to distinguish {@code null} from empty text and to
+     * separate neighbouring texts.
+     */
+    private static long hash(long hash, CharSequence cs) {
+        if (cs == null) {
+            return (hash ^ -1) * FNV_PRIME;
+        }
+
+        final int length = cs.length();
+        hash = (hash ^ length) * FNV_PRIME;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ cs.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void loadIcon() {
+        final OpenNotification sbn;
+        synchronized (this) {
+            if (mIconLoaded || mNotification == null) return;
+            mIconLoaded = true;
+            sbn = mNotification;
+        }
+
+        // Most of notifications share their icons, so
+        // there's a good chance it's already loaded.
+        final Context context = mContext;
+        final int size = context.getResources().getDimensionPixelSize(R.dimen.notification_icon_size);
+        Bitmap bitmap = NotificationIconCache.getInstance()
+                .peekIcon(sbn, sbn.getNotification().icon, size);
+        if (bitmap != null) {
+            setIcon(bitmap);
+            return;
+        }
 
-        AsyncTask.stop(mIconLoader);
         mIconLoader = new IconLoaderThread(context, sbn);
         mIconLoader.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
@@ -193,6 +418,7 @@ public class NotificationData {
     /**
      * Task to load an icon from {@link StatusBarNotification notification}.
      *
+     * @see NotificationIconCache
      * @author Artem Chepurnoy
      */
     private static class IconLoaderThread extends AsyncTask<Void, Void, Bitmap> {
@@ -222,46 +448,9 @@ public class NotificationData {
                 return null;
             }
 
-            Resources res = context.getResources();
-            Drawable drawable = NotificationUtils
-                    .getDrawable(context, openNotification, openNotification.getNotification().icon);
-
-            if (isCancelled()) {
-                return null;
-            }
-
-            final int size = res.getDimensionPixelSize(R.dimen.notification_icon_size);
-            return drawable == null ? createEmptyIcon(res, size) : createIcon(drawable, size);
-        }
-
-        // TODO: Automatically scale the icon.
-        private Bitmap createIcon(Drawable drawable, int size) {
-            Bitmap icon = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_4444);
-            Canvas canvas = new Canvas(icon);
-
-            drawable = drawable.mutate();
-            drawable.setBounds(0, 0, size, size);
-            drawable.draw(canvas);
-
-            return icon;
-        }
-
-        private Bitmap createEmptyIcon(Resources res, int size) {
-            Paint paint = new Paint();
-            paint.setAntiAlias(true);
-            paint.setColor(0xDDCCCCCC); // white gray
-
-            final float radius = size / 2f;
-
-            Bitmap icon = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_4444);
-            Canvas canvas = new Canvas(icon);
-            canvas.drawCircle(radius, radius, radius, paint);
-
-            Drawable drawable = res.getDrawable(R.drawable.ic_bug_light);
-            drawable.setBounds(0, 0, size, size);
-            drawable.draw(canvas);
-
-            return icon;
+            final int size = context.getResources().getDimensionPixelSize(R.dimen.notification_icon_size);
+            final int iconRes = openNotification.getNotification().icon;
+            return NotificationIconCache.getInstance().getIcon(context, openNotification, iconRes, size);
         }
 
         @Override
@@ -273,11 +462,19 @@ public class NotificationData {
             }
 
             OpenNotification data = mOpenNotification.get();
-            if (bitmap != null && data != null) {
-                data.getNotificationData().setIcon(bitmap);
+            if (data != null) {
+                if (bitmap != null) data.getNotificationData().setIcon(bitmap);
+            } else {
+                BitmapPool.getInstance().release(bitmap);
             }
         }
 
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            super.onCancelled(bitmap);
+            BitmapPool.getInstance().release(bitmap);
+        }
+
         private long elapsedRealtime() {
             return SystemClock.elapsedRealtime();
         }
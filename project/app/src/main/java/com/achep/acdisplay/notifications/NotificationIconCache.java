@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.achep.acdisplay.utils.BitmapPool;
+import com.achep.headsup.R;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Memory-bounded cache of rendered small icons of notifications, keyed by
+ * package name, icon resource, size and bitmap config. Concurrent loads of
+ * the same icon are de-duplicated: only one thread renders it, others wait
+ * for the result.
+ * <p>
+ * <b>Never recycle bitmaps returned by this cache</b>, they are shared
+ * across notifications. Icons are {@link BitmapPool pooled} and returned
+ * already acquired, so an evicted icon is not reused while somebody holds it:
+ * {@link BitmapPool#release(Bitmap) release} the icon when it's not needed anymore.
+ * </p>
+ *
+ * @author Artem Chepurnoy
+ */
+public final class NotificationIconCache {
+
+    private static final String TAG = "NotificationIconCache";
+
+    private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_4444;
+
+    /**
+     * The maximum size of the cache in bytes.
+     */
+    private static final int MAX_SIZE = 1024 * 1024; // 1 MiB
+
+    private static NotificationIconCache sInstance;
+
+    private final LruCache<String, Bitmap> mCache;
+    private final ConcurrentHashMap<String, FutureTask<Bitmap>> mLoadingMap;
+
+    public static synchronized NotificationIconCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new NotificationIconCache();
+        }
+        return sInstance;
+    }
+
+    private NotificationIconCache() {
+        mLoadingMap = new ConcurrentHashMap<>();
+        mCache = new LruCache<String, Bitmap>(MAX_SIZE) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key,
+                                        Bitmap oldValue, Bitmap newValue) {
+                // Views that still display the icon keep it
+                // acquired, so it won't be reused under them.
+                BitmapPool.getInstance().release(oldValue);
+            }
+        };
+    }
+
+    @NonNull
+    private static String createKey(@NonNull String packageName, int iconRes, int size) {
+        return packageName + "|" + iconRes + "|" + size + "|" + CONFIG;
+    }
+
+    /**
+     * @return the acquired cached icon, or {@code null} if it's not loaded yet.
+     * @see #getIcon(Context, OpenNotification, int, int)
+     */
+    @Nullable
+    public Bitmap peekIcon(@NonNull OpenNotification n, int iconRes, int size) {
+        return acquireIcon(createKey(n.getPackageName(), iconRes, size));
+    }
+
+    /**
+     * Returns the cached icon acquired from the pool. This is atomic with
+     * putting and removing icons, so the icon can't be released by
+     * the cache in between.
+     */
+    @Nullable
+    private synchronized Bitmap acquireIcon(@NonNull String key) {
+        Bitmap bitmap = mCache.get(key);
+        BitmapPool.getInstance().acquire(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Returns the rendered icon of notification, loading it if needed.
+     * This may take a while, so do not call it from the main thread.
+     *
+     * @param iconRes the resource of the icon in notification's package.
+     * @param size    the size of the icon in pixels.
+     * @return the acquired icon, or {@code null} if the loading was interrupted.
+     */
+    @Nullable
+    public Bitmap getIcon(@NonNull final Context context,
+                          @NonNull final OpenNotification n,
+                          final int iconRes, final int size) {
+        final String key = createKey(n.getPackageName(), iconRes, size);
+        for (;;) {
+            Bitmap bitmap = acquireIcon(key);
+            if (bitmap != null) {
+                return bitmap;
+            }
+
+            FutureTask<Bitmap> task = new FutureTask<>(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    synchronized (NotificationIconCache.this) {
+                        // The previous loader may have finished right
+                        // before we claimed the loading slot.
+                        Bitmap bitmap = mCache.get(key);
+                        if (bitmap != null) return bitmap;
+                    }
+
+                    Resources res = context.getResources();
+                    Drawable drawable = NotificationUtils.getDrawable(context, n, iconRes);
+                    Bitmap bitmap = drawable == null
+                            ? createEmptyIcon(res, size)
+                            : createIcon(drawable, size);
+                    synchronized (NotificationIconCache.this) {
+                        mCache.put(key, bitmap);
+                    }
+                    return bitmap;
+                }
+            });
+
+            FutureTask<Bitmap> loading = mLoadingMap.putIfAbsent(key, task);
+            if (loading == null) {
+                // Nobody is loading this icon at the moment.
+                loading = task;
+                task.run();
+            }
+
+            try {
+                bitmap = loading.get();
+            } catch (InterruptedException e) {
+                return null;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to load notification\'s icon.");
+                return null;
+            } finally {
+                if (loading == task) mLoadingMap.remove(key, task);
+            }
+
+            synchronized (this) {
+                if (mCache.get(key) == bitmap) {
+                    BitmapPool.getInstance().acquire(bitmap);
+                    return bitmap;
+                }
+            }
+
+            // The icon was evicted before we could
+            // acquire it, so load it again.
+        }
+    }
+
+    /**
+     * Removes all icons of given package from the cache.
+     */
+    public synchronized void removePackage(@NonNull String packageName) {
+        final String prefix = packageName + "|";
+        for (String key : mCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mCache.remove(key);
+            }
+        }
+    }
+
+    // TODO: Automatically scale the icon.
+    private static Bitmap createIcon(Drawable drawable, int size) {
+        Bitmap icon = BitmapPool.getInstance().obtain(size, size, CONFIG);
+        Canvas canvas = new Canvas(icon);
+
+        drawable = drawable.mutate();
+        drawable.setBounds(0, 0, size, size);
+        drawable.draw(canvas);
+
+        return icon;
+    }
+
+    private static Bitmap createEmptyIcon(Resources res, int size) {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setColor(0xDDCCCCCC); // white gray
+
+        final float radius = size / 2f;
+
+        Bitmap icon = BitmapPool.getInstance().obtain(size, size, CONFIG);
+        Canvas canvas = new Canvas(icon);
+        canvas.drawCircle(radius, radius, radius, paint);
+
+        Drawable drawable = res.getDrawable(R.drawable.ic_bug_light);
+        drawable.setBounds(0, 0, size, size);
+        drawable.draw(canvas);
+
+        return icon;
+    }
+
+}
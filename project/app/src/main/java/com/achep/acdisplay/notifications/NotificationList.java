@@ -23,13 +23,18 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * Is a list of {@link OpenNotification notifications} with
  * an ability to easily add / replace / remove item from the list.
+ * Notifications are indexed by their {@link OpenNotification#getKey() keys},
+ * so finding, replacing or removing a notification in the list doesn't
+ * require a linear scan. The order of the list is not kept on removal.
  *
  * @author Artem Chepurnoy
  * @see NotificationUtils#hasIdenticalIds(OpenNotification, OpenNotification)
+ * @see OpenNotification#getKey()
  */
 final class NotificationList {
 
@@ -46,6 +51,14 @@ final class NotificationList {
     @NonNull
     private ArrayList<OpenNotification> mList;
 
+    /**
+     * Maps the {@link OpenNotification#getKey() key} of notification
+     * to its position in {@link #mList list}. Keys are kept in order
+     * of adding, so the first one belongs to the oldest notification.
+     */
+    @NonNull
+    private LinkedHashMap<String, Integer> mIndexMap;
+
     @Nullable
     private OnNotificationListChangedListener mListener;
 
@@ -93,6 +106,7 @@ final class NotificationList {
     public NotificationList(@Nullable OnNotificationListChangedListener listener) {
         mListener = listener;
         mList = new ArrayList<>(10);
+        mIndexMap = new LinkedHashMap<>(10);
     }
 
     /**
@@ -135,20 +149,22 @@ final class NotificationList {
      * {@link NotificationList.OnNotificationListChangedListener#onNotificationChanged(OpenNotification n, OpenNotification old)}
      */
     public int push(OpenNotification n) {
-        final int index = indexOf(n);
-        if (index == -1) {
+        final String key = n.getKey();
+        final Integer index = mIndexMap.get(key);
+        if (index == null) {
             if (mList.size() > mMaximumSize) {
-                remove(mList.get(0));
+                // Remove the oldest notification.
+                String eldestKey = mIndexMap.keySet().iterator().next();
+                remove(mList.get(mIndexMap.get(eldestKey)));
             }
 
             // Add new notification to the list.
+            mIndexMap.put(key, mList.size());
             mList.add(n);
             return notifyListener(EVENT_ADDED, n, null);
         } else {
             // Replace old notification with new one.
-            OpenNotification old = mList.get(index);
-            mList.remove(index);
-            mList.add(index, n);
+            OpenNotification old = mList.set(index, n);
             return notifyListener(EVENT_CHANGED, n, old);
         }
     }
@@ -160,10 +176,19 @@ final class NotificationList {
      * @see #push(OpenNotification n)
      */
     public int remove(OpenNotification n) {
-        final int index = indexOf(n);
-        if (index != -1) {
+        final Integer index = mIndexMap.remove(n.getKey());
+        if (index != null) {
+            // Move the last notification to the freed position,
+            // so no other positions have to be shifted.
+            final int last = mList.size() - 1;
             OpenNotification old = mList.get(index);
-            mList.remove(index);
+            if (index != last) {
+                OpenNotification moved = mList.get(last);
+                mList.set(index, moved);
+                mIndexMap.put(moved.getKey(), index);
+            }
+            mList.remove(last);
+
             return notifyListener(EVENT_REMOVED, old, null);
         }
         return RESULT_DEFAULT;
@@ -172,6 +197,7 @@ final class NotificationList {
     /**
      * <b>Do not operate on this list!</b>
      * Use this only for searching and getting notifications.
+     * Note, that removing a notification changes the order of the list.
      *
      * @return link to primitive list of notifications.
      */
@@ -185,13 +211,8 @@ final class NotificationList {
      * {@link #mList list}, or {@code -1} if not found.
      */
     public int indexOf(@NonNull OpenNotification n) {
-        final int size = mList.size();
-        for (int i = 0; i < size; i++) {
-            if (NotificationUtils.hasIdenticalIds(n, mList.get(i))) {
-                return i;
-            }
-        }
-        return -1;
+        final Integer index = mIndexMap.get(n.getKey());
+        return index == null ? -1 : index;
     }
 
     /**
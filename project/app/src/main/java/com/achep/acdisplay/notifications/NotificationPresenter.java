@@ -22,6 +22,8 @@ package com.achep.acdisplay.notifications;
 import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -29,6 +31,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.achep.acdisplay.App;
+import com.achep.acdisplay.Build;
 import com.achep.acdisplay.Config;
 import com.achep.acdisplay.Device;
 import com.achep.acdisplay.Operator;
@@ -36,9 +39,12 @@ import com.achep.headsup.HeadsUpManager;
 import com.achep.acdisplay.blacklist.AppConfig;
 import com.achep.acdisplay.blacklist.Blacklist;
 import com.achep.acdisplay.utils.PackageUtils;
+import com.achep.acdisplay.utils.PowerUtils;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Artem on 27.12.13.
@@ -59,12 +65,48 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
     private static final int FLAG_DONT_NOTIFY_FOLLOWERS = 1;
     private static final int FLAG_DONT_WAKE_UP = 2;
 
+    /**
+     * Means that the notification has already been
+     * {@link #prepareNotification(Context, OpenNotification) prepared}
+     * and its data doesn't need to be loaded again.
+     */
+    public static final int FLAG_PREPARED = 4;
+
     private static NotificationPresenter sNotificationPresenter;
 
     private final NotificationList mGList;
     private final NotificationList mLList;
 
     private final ArrayList<WeakReference<OnNotificationListChangedListener>> mListenersRefs;
+    private final ArrayList<WeakReference<OnNotificationListBatchChangedListener>> mBatchListenersRefs;
+
+    /**
+     * Fingerprints of the last prepared notifications, keyed by
+     * {@link OpenNotification#getKey() keys}.
+     *
+     * @see #prepareNotification(Context, OpenNotification)
+     */
+    private final ConcurrentHashMap<String, Long> mFingerprints;
+
+    /**
+     * Changes collected since the last
+     * {@link #dispatchBatch() batch dispatch}.
+     */
+    private final ArrayList<Delta> mPendingDeltas;
+
+    /**
+     * Replaced and removed notifications that are referenced by
+     * {@link #mPendingDeltas pending changes}, so can't be recycled
+     * before the {@link #dispatchBatch() batch dispatch}.
+     */
+    private final ArrayList<OpenNotification> mPendingRecycles;
+    private final Handler mHandler;
+    private final Runnable mDispatchBatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatchBatch();
+        }
+    };
     private final Config mConfig;
     private final Blacklist mBlacklist;
 
@@ -161,6 +203,50 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
 
     }
 
+    /**
+     * A single change of the list of notifications.
+     *
+     * @see OnNotificationListBatchChangedListener
+     */
+    public static final class Delta {
+
+        /**
+         * The changed notification, or {@code null} for
+         * {@link #EVENT_BATH bath} event.
+         */
+        @Nullable
+        public final OpenNotification notification;
+
+        /**
+         * The type of this change.
+         *
+         * @see OnNotificationListChangedListener#onNotificationListChanged(NotificationPresenter, OpenNotification, int)
+         */
+        public final int event;
+
+        private Delta(@Nullable OpenNotification notification, int event) {
+            this.notification = notification;
+            this.event = event;
+        }
+
+    }
+
+    /**
+     * Same as {@link OnNotificationListChangedListener}, but receives
+     * all changes made during one iteration of the main looper at once.
+     */
+    public interface OnNotificationListBatchChangedListener {
+
+        /**
+         * Callback that the list of notifications has changed.
+         *
+         * @param deltas all changes in order they were made.
+         */
+        public void onNotificationListBatchChanged(@NonNull NotificationPresenter np,
+                                                   @NonNull List<Delta> deltas);
+
+    }
+
     public void registerListener(OnNotificationListChangedListener listener) {
         // Make sure to register listener only once.
         for (WeakReference<OnNotificationListChangedListener> ref : mListenersRefs) {
@@ -184,13 +270,43 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         Log.w(TAG, "Tried to unregister non-existent listener!");
     }
 
+    public void registerListener(OnNotificationListBatchChangedListener listener) {
+        // Make sure to register listener only once.
+        for (WeakReference<OnNotificationListBatchChangedListener> ref : mBatchListenersRefs) {
+            if (ref.get() == listener) {
+                Log.w(TAG, "Tried to register already registered batch listener!");
+                return;
+            }
+        }
+
+        mBatchListenersRefs.add(new WeakReference<>(listener));
+    }
+
+    public void unregisterListener(OnNotificationListBatchChangedListener listener) {
+        for (WeakReference<OnNotificationListBatchChangedListener> ref : mBatchListenersRefs) {
+            if (ref.get() == listener) {
+                mBatchListenersRefs.remove(ref);
+                return;
+            }
+        }
+
+        Log.w(TAG, "Tried to unregister non-existent batch listener!");
+    }
+
     private NotificationPresenter() {
         mListenersRefs = new ArrayList<>();
+        mBatchListenersRefs = new ArrayList<>();
+        mPendingDeltas = new ArrayList<>();
+        mPendingRecycles = new ArrayList<>();
+        mFingerprints = new ConcurrentHashMap<>();
+        mHandler = new Handler(Looper.getMainLooper());
         mGList = new NotificationList(null);
         mLList = new NotificationList(this);
         mHeadsUpManager = new HeadsUpManager();
 
-        if (!Device.hasJellyBeanMR2Api() || Device.hasLemonCakeApi()) {
+        if (!Device.hasJellyBeanMR2Api()) {
+            // There's no way to track removing notifications
+            // on old platforms, so keep the lists tiny.
             mGList.setMaximumSize(5);
             mLList.setMaximumSize(5);
         }
@@ -233,6 +349,7 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
      *
      * @see #FLAG_DONT_NOTIFY_FOLLOWERS
      * @see #FLAG_DONT_WAKE_UP
+     * @see #FLAG_PREPARED
      */
     public void postNotification(
             @NonNull Context context,
@@ -243,10 +360,9 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         // If notification will not be added to the
         // list there's no point of loading its data.
         if (globalValid) {
-            n.loadData(context);
-
-            NotificationData data = n.getNotificationData();
-            data.loadCircleIcon(n);
+            if (!Operator.bitAnd(flags, FLAG_PREPARED)) {
+                prepareNotification(context, n);
+            }
 
             localValid = isValidForLocal(n);
         }
@@ -261,12 +377,53 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         mLList.pushOrRemove(n, localValid, flagIgnoreFollowers);
     }
 
+    /**
+     * Loads the data of notification: texts, actions, icons and so on.
+     * This is the heaviest part of posting a notification, so it may be
+     * called from a background thread. Post prepared notification
+     * with {@link #FLAG_PREPARED} flag then.
+     * <p>
+     * While the screen is off nobody is going to draw the notification,
+     * so visual preparation is skipped: the service prepares visuals of
+     * present notifications on its worker thread when the screen turns on.
+     * Same goes for the updates
+     * that don't change the {@link NotificationData#getFingerprint() content}:
+     * they're considered as spam.
+     * </p>
+     *
+     * @see #postNotification(Context, OpenNotification, int)
+     */
+    public void prepareNotification(
+            @NonNull Context context,
+            @NonNull OpenNotification n) {
+        if (!isValidForGlobal(n)) {
+            return;
+        }
+
+        n.loadData(context);
+
+        // Parse texts here, they're needed by the validity
+        // and spam checks anyway.
+        NotificationData data = n.getNotificationData();
+        data.loadTexts();
+
+        Long fingerprint = mFingerprints.put(n.getKey(), data.getFingerprint());
+        if (fingerprint != null && fingerprint == data.getFingerprint()) {
+            if (Build.DEBUG) Log.d(TAG, "Skipped visual preparation of " + n.getKey() + ": spam.");
+        } else if (PowerUtils.isScreenOn(context)) {
+            data.loadVisuals();
+        } else if (Build.DEBUG) {
+            Log.d(TAG, "Deferred visual preparation of " + n.getKey() + ": the screen is off.");
+        }
+    }
+
     /**
      * Removes notification from the presenter and sends
      * this event to followers. Calling his method will not
      * remove notification from system!
      */
     public void removeNotification(@NonNull OpenNotification n) {
+        mFingerprints.remove(n.getKey());
         mGList.remove(n);
         mLList.remove(n);
     }
@@ -284,11 +441,11 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         // Remove not valid notifications
         // from local list.
         ArrayList<OpenNotification> list = mLList.list();
-        for (int i = 0; i < list.size(); i++) {
+        for (int i = list.size() - 1; i >= 0; i--) {
             OpenNotification n = list.get(i);
             if (!isValidForLocal(n)) {
                 changed = true;
-                list.remove(i--);
+                mLList.pushOrRemove(n, false, true);
             }
         }
 
@@ -296,7 +453,7 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         for (OpenNotification n : mGList.list()) {
             if (isValidForLocal(n) && mLList.indexOf(n) == -1) {
                 changed = true;
-                list.add(n);
+                mLList.pushOrRemove(n, true, true);
             }
         }
 
@@ -329,29 +486,27 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
         NotificationData dataOld = old.getNotificationData();
         NotificationData dataNew = n.getNotificationData();
 
-        if (dataNew.number == dataOld.number
-                && TextUtils.equals(dataNew.titleText, dataOld.titleText)
-                && TextUtils.equals(dataNew.titleBigText, dataOld.titleBigText)
-                && TextUtils.equals(dataNew.messageText, dataOld.messageText)
-                && TextUtils.equals(dataNew.infoText, dataOld.infoText)) {
+        if (dataNew.getFingerprint() == dataOld.getFingerprint()) {
             // Technically notification was changed, but it was a fault
             // of dumb developer. Mark notification as read, if old one was.
             n.getNotificationData().markAsRead(old.getNotificationData().isRead);
 
             if (!n.isMine()) {
                 notifyListeners(n, EVENT_CHANGED_SPAM);
+                if (old != n) recycleNotification(old);
                 return RESULT_SPAM; // Don't wake up.
             }
         }
 
         notifyListeners(n, EVENT_CHANGED);
+        if (old != n) recycleNotification(old);
         return RESULT_SUCCESS;
     }
 
     @Override
     public int onNotificationRemoved(@NonNull OpenNotification n) {
         notifyListeners(n, EVENT_REMOVED);
-        n.recycle(); // Free all resources
+        recycleNotification(n);
         return RESULT_SUCCESS;
     }
 
@@ -359,6 +514,18 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
     // //////// -- NOTIFICATION UTILS -- ////////
     // //////////////////////////////////////////
 
+    /**
+     * Frees all resources of given notification, right after
+     * the pending changes are dispatched if there are any.
+     */
+    private void recycleNotification(@NonNull OpenNotification n) {
+        if (mPendingDeltas.isEmpty()) {
+            n.recycle();
+        } else {
+            mPendingRecycles.add(n);
+        }
+    }
+
     private void notifyListeners(@Nullable OpenNotification n, int event) {
         for (int i = mListenersRefs.size() - 1; i >= 0; i--) {
             WeakReference<OnNotificationListChangedListener> ref = mListenersRefs.get(i);
@@ -373,6 +540,41 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
                 l.onNotificationListChanged(this, n, event);
             }
         }
+
+        if (!mBatchListenersRefs.isEmpty()) {
+            if (mPendingDeltas.isEmpty()) {
+                mHandler.post(mDispatchBatchRunnable);
+            }
+
+            mPendingDeltas.add(new Delta(n, event));
+        }
+    }
+
+    /**
+     * Sends all {@link #mPendingDeltas pending changes} to
+     * {@link OnNotificationListBatchChangedListener batch listeners}.
+     */
+    private void dispatchBatch() {
+        if (mPendingDeltas.isEmpty()) return;
+        List<Delta> deltas = new ArrayList<>(mPendingDeltas);
+        mPendingDeltas.clear();
+
+        for (int i = mBatchListenersRefs.size() - 1; i >= 0; i--) {
+            WeakReference<OnNotificationListBatchChangedListener> ref = mBatchListenersRefs.get(i);
+            OnNotificationListBatchChangedListener l = ref.get();
+
+            if (l == null) {
+                Log.w(TAG, "Deleting unused batch listener!");
+                mBatchListenersRefs.remove(i);
+            } else {
+                l.onNotificationListBatchChanged(this, deltas);
+            }
+        }
+
+        // Listeners have seen the notifications,
+        // so it's safe to free them now.
+        for (OpenNotification n : mPendingRecycles) n.recycle();
+        mPendingRecycles.clear();
     }
 
     /**
@@ -380,7 +582,7 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
      * the requirements (such as not ongoing and clearable).
      */
     private boolean isValidForLocal(@NonNull OpenNotification o) {
-        AppConfig config = mBlacklist.getAppConfig(o.getPackageName());
+        AppConfig.Snapshot config = mBlacklist.getAppConfigSnapshot(o.getPackageName());
 
         if (config.isHidden()) {
             // Do not display any notifications from this app.
@@ -399,11 +601,11 @@ public class NotificationPresenter implements NotificationList.OnNotificationLis
 
         // Do not allow notifications without any content.
         NotificationData data = o.getNotificationData();
-        return !(TextUtils.isEmpty(data.titleText)
-                && TextUtils.isEmpty(data.titleBigText)
-                && TextUtils.isEmpty(data.messageText)
-                && TextUtils.isEmpty(data.infoText)
-                && data.messageTextLines == null);
+        return !(TextUtils.isEmpty(data.getTitleText())
+                && TextUtils.isEmpty(data.getTitleBigText())
+                && TextUtils.isEmpty(data.getMessageText())
+                && TextUtils.isEmpty(data.getInfoText())
+                && data.getMessageTextLines() == null);
     }
 
     private boolean isValidForGlobal(@NonNull OpenNotification n) {
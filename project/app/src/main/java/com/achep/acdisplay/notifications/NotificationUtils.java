@@ -22,7 +22,6 @@ import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.service.notification.NotificationListenerService;
@@ -35,8 +34,6 @@ import com.achep.acdisplay.Operator;
 import com.achep.acdisplay.services.MediaService;
 import com.achep.acdisplay.utils.PendingIntentUtils;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -79,13 +76,10 @@ public class NotificationUtils {
                     // FIXME: Android L reflections.
                     // service.cancelNotification(notification.getKey());
                     try {
-                        // Get notification's key.
-                        Method method = sbn.getClass().getMethod("getKey");
-                        method.setAccessible(true);
-                        String key = (String) method.invoke(sbn);
+                        String key = n.getKey();
 
                         // Cancel notification.
-                        method = service.getClass().getMethod(
+                        Method method = service.getClass().getMethod(
                                 "cancelNotification", String.class);
                         method.setAccessible(true);
                         method.invoke(service, key);
@@ -116,13 +110,14 @@ public class NotificationUtils {
         return null;
     }
 
+    /**
+     * @return the (possibly cached) context of notification's package.
+     * @see PackageContextCache
+     */
     public static Context createContext(Context context, OpenNotification n) {
-        try {
-            return context.createPackageContext(n.getPackageName(), Context.CONTEXT_RESTRICTED);
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.w(TAG, "Failed to create notification\'s context");
-            return null;
-        }
+        Context pkgContext = PackageContextCache.getInstance().getContext(context, n.getPackageName());
+        if (pkgContext == null) Log.w(TAG, "Failed to create notification\'s context");
+        return pkgContext;
     }
 
     /**
@@ -32,8 +32,6 @@ import android.util.Log;
 import com.achep.acdisplay.Device;
 import com.achep.acdisplay.utils.PackageUtils;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -42,7 +40,19 @@ import java.lang.reflect.Method;
  */
 public class OpenNotification {
 
+    private static final String TAG = "OpenNotification";
+
+    /**
+     * Accessor of the {@code StatusBarNotification#getKey()} on Android L,
+     * resolved once and shared across all instances.
+     *
+     * @see #getKeyMethod()
+     */
+    private static Method sGetKeyMethod;
+    private static boolean sGetKeyMethodResolved;
+
     private StatusBarNotification mStatusBarNotification;
+    private String mKey;
 
     private Notification mNotification;
     private NotificationData mNotificationData;
@@ -76,6 +86,7 @@ public class OpenNotification {
     }
 
     public void loadData(Context context) {
+        mKey = null; // the key may depend on notification's data
         mNotificationData.loadNotification(context, this, false);
         mMine = TextUtils.equals(getPackageName(), PackageUtils.getName(context));
     }
@@ -129,33 +140,64 @@ public class OpenNotification {
      * @return {@code true} if notifications are from the same source and will
      * be handled by system as same notifications, {@code false} otherwise.
      */
-    @SuppressLint("NewApi")
-    @SuppressWarnings("ConstantConditions")
     public boolean hasIdenticalIds(@Nullable OpenNotification n) {
-        if (n == null) return false;
+        return n != null && getKey().equals(n.getKey());
+    }
+
+    /**
+     * Returns the key of this notification: notifications with equal keys
+     * are {@link #hasIdenticalIds(OpenNotification) handled by system as the same}.
+     * On Android L this is the {@code StatusBarNotification#getKey()}, on older
+     * platforms it's built from the package name, id and tag.
+     * The key is calculated only once and cached after.
+     *
+     * @return the key of this notification.
+     * @see #onCreateKey()
+     * @see NotificationList
+     */
+    @NonNull
+    public String getKey() {
+        if (mKey == null) mKey = onCreateKey();
+        return mKey;
+    }
+
+    /**
+     * @return newly built key of this notification.
+     * @see #getKey()
+     */
+    @SuppressLint("NewApi")
+    @NonNull
+    protected String onCreateKey() {
         StatusBarNotification sbn = getStatusBarNotification();
-        StatusBarNotification sbn2 = n.getStatusBarNotification();
         if (Device.hasLemonCakeApi()) {
             // FIXME: Android L reflections.
-            // service.cancelNotification(notification.getKey());
+            Method method = getKeyMethod();
+            if (method != null) {
+                try {
+                    return (String) method.invoke(sbn);
+                } catch (InvocationTargetException
+                        | IllegalAccessException e) { /* sad, but true */ }
+            }
+        }
+        return getPackageName() + "|" + sbn.getId() + "|" + sbn.getTag();
+    }
+
+    /**
+     * @return the {@code StatusBarNotification#getKey()} method, or {@code null}
+     * if it is not available.
+     */
+    @Nullable
+    private static synchronized Method getKeyMethod() {
+        if (!sGetKeyMethodResolved) {
+            sGetKeyMethodResolved = true;
             try {
-                Method method = sbn.getClass().getMethod("getKey");
-                method.setAccessible(true);
-                String key = (String) method.invoke(sbn);
-                String key2 = (String) method.invoke(sbn2);
-
-                return new EqualsBuilder()
-                        .append(key, key2)
-                        .isEquals();
-            } catch (NoSuchMethodException
-                    | InvocationTargetException
-                    | IllegalAccessException e) { /* sad, but true */ }
+                sGetKeyMethod = StatusBarNotification.class.getMethod("getKey");
+                sGetKeyMethod.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                Log.w(TAG, "Failed to resolve the key accessor of notification.");
+            }
         }
-        return new EqualsBuilder()
-                .append(sbn.getId(), sbn2.getId())
-                .append(getPackageName(), n.getPackageName())
-                .append(sbn.getTag(), sbn2.getTag())
-                .isEquals();
+        return sGetKeyMethod;
     }
 
     //-- BASICS ---------------------------------------------------------------
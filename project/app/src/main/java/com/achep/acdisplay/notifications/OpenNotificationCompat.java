@@ -4,12 +4,9 @@ import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.widget.RemoteViews;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-
 /**
 * Created by Artem Chepurnoy on 05.09.2014.
 */
@@ -54,26 +51,14 @@ public class OpenNotificationCompat extends OpenNotification {
     /**
      * {@inheritDoc}
      */
+    @NonNull
     @Override
-    public boolean hasIdenticalIds(@Nullable OpenNotification n) {
-        if (n == null) {
-            return false;
-        }
-
-        EqualsBuilder builder = new EqualsBuilder();
-
+    protected String onCreateKey() {
         RemoteViews cv = getNotification().contentView;
-        RemoteViews cv2 = n.getNotification().contentView;
-        if (cv != null && cv2 != null) {
-            builder.append(cv.getLayoutId(), cv2.getLayoutId());
-        }
-
-        return builder
-                .append(getNotification().ledARGB, n.getNotification().ledARGB)
-                .append(getPackageName(), n.getPackageName())
-                .append(getNotificationData().titleText, n.getNotificationData().titleText)
-                .isEquals();
-
+        return getPackageName()
+                + "|" + (cv != null ? cv.getLayoutId() : 0)
+                + "|" + getNotification().ledARGB
+                + "|" + getNotificationData().getTitleText();
     }
 
     //-- OTHER ----------------------------------------------------------------
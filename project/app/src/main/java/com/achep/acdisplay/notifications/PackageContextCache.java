@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.achep.acdisplay.Build;
+
+/**
+ * Bounded cache of the {@link Context#createPackageContext(String, int) package contexts}.
+ * Creating a package context is an expensive operation, and it's needed for loading
+ * every notification's icon or parsing its views.
+ * Cached contexts are invalidated when the package is replaced or removed, as
+ * well as the icons and {@link DominantColorCache colors} of the package.
+ *
+ * @author Artem Chepurnoy
+ * @see NotificationUtils#createContext(Context, OpenNotification)
+ */
+public final class PackageContextCache {
+
+    private static final String TAG = "PackageContextCache";
+
+    private static final int MAX_SIZE = 16;
+
+    private static PackageContextCache sInstance;
+
+    private final LruCache<String, Context> mCache = new LruCache<>(MAX_SIZE);
+
+    private volatile int mHitCount;
+    private volatile int mMissCount;
+    private volatile long mCreationTime;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data == null) return;
+
+            String packageName = data.getSchemeSpecificPart();
+            if (packageName != null) {
+                if (Build.DEBUG) Log.d(TAG, "Invalidating the context of " + packageName);
+                mCache.remove(packageName);
+                NotificationIconCache.getInstance().removePackage(packageName);
+
+                // Keep the persisted color while the package is being updated.
+                final boolean uninstalled = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                        && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+                DominantColorCache.getInstance().removePackage(context, packageName, uninstalled);
+            }
+        }
+
+    };
+
+    public static synchronized PackageContextCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new PackageContextCache();
+        }
+        return sInstance;
+    }
+
+    private PackageContextCache() { /* empty */ }
+
+    /**
+     * Starts listening to packages' changes.
+     * This is called on {@link com.achep.acdisplay.App#onCreate() App create}.
+     */
+    public void init(@NonNull Context context) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(mReceiver, filter);
+    }
+
+    /**
+     * Returns the restricted context of given package, creating it only
+     * if it's not in the cache.
+     *
+     * @return the context of the package, or {@code null} if there's no such package.
+     */
+    @Nullable
+    public Context getContext(@NonNull Context context, @NonNull String packageName) {
+        Context pkgContext = mCache.get(packageName);
+        if (pkgContext != null) {
+            mHitCount++;
+            return pkgContext;
+        }
+
+        mMissCount++;
+        try {
+            long start = SystemClock.elapsedRealtime();
+            pkgContext = context.createPackageContext(packageName, Context.CONTEXT_RESTRICTED);
+            mCreationTime += SystemClock.elapsedRealtime() - start;
+
+            mCache.put(packageName, pkgContext);
+            return pkgContext;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * @return the ratio of cache hits to all requests, from {@code 0} to {@code 1}.
+     */
+    public float getHitRate() {
+        final int hits = mHitCount;
+        final int total = hits + mMissCount;
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    /**
+     * @return the estimated time saved by the cache, in millis: the number of hits
+     * multiplied by the average time of creating a context.
+     */
+    public long getTimeSaved() {
+        final int misses = mMissCount;
+        return misses == 0 ? 0 : mCreationTime * mHitCount / misses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "PackageContextCache ["
+                + "hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " hit_rate=" + getHitRate()
+                + " time_saved=" + getTimeSaved() + "ms"
+                + "]";
+    }
+
+}
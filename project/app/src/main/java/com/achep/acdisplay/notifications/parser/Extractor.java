@@ -26,6 +26,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -49,6 +50,73 @@ public final class Extractor {
 
     private static final String TAG = "Extractor";
 
+    /**
+     * Cached size of the notification's subtext.
+     *
+     * @see #removeSubtextViews(Context, ArrayList)
+     */
+    private float mSubtextSize = Float.NaN;
+
+    /**
+     * The maximum number of cached {@link Template templates}.
+     */
+    private static final int MAX_TEMPLATES = 16;
+
+    /**
+     * Templates of notifications' layouts, keyed by package name and layout id.
+     *
+     * @see #loadFromView(NotificationData, Context, OpenNotification)
+     */
+    private final LruCache<String, Template> mTemplates = new LruCache<>(MAX_TEMPLATES);
+
+    /**
+     * Remembers which views of the layout hold the title and the message,
+     * so next notifications with the same layout don't need the full
+     * heuristic pass. Also keeps an inflated view of the layout to be
+     * recycled.
+     */
+    private static class Template {
+
+        /**
+         * The context the {@link #view} was inflated with.
+         */
+        Context context;
+        ViewGroup view;
+
+        int titleId = View.NO_ID;
+        int[] messageIds;
+
+        /**
+         * @return the recycled view of the layout, or {@code null} if
+         * there's no one or it's in use.
+         */
+        synchronized ViewGroup obtainView(@NonNull Context context) {
+            if (this.context != context) {
+                // The package was probably updated, so
+                // its layout may differ.
+                this.context = context;
+                this.view = null;
+                this.titleId = View.NO_ID;
+                this.messageIds = null;
+            }
+
+            ViewGroup view = this.view;
+            this.view = null;
+            return view;
+        }
+
+        synchronized void recycleView(@NonNull Context context, @NonNull ViewGroup view) {
+            if (this.context == context) {
+                this.view = view;
+            }
+        }
+
+        synchronized boolean hasIds() {
+            return titleId != View.NO_ID;
+        }
+
+    }
+
     /**
      * Gets a bundle with additional data from notification.
      */
@@ -127,24 +195,125 @@ public final class Extractor {
     private void loadFromView(@NonNull NotificationData data,
                               @NonNull Context context,
                               @NonNull OpenNotification openNotification) {
+        final Notification n = openNotification.getNotification();
+        final RemoteViews rvs = n.bigContentView == null ? n.contentView : n.bigContentView;
+        if (rvs == null) {
+            return;
+        }
+
+        final String key = openNotification.getPackageName() + "|" + rvs.getLayoutId();
+        Template template = mTemplates.get(key);
+        if (template == null) {
+            template = new Template();
+            mTemplates.put(key, template);
+        }
+
+        Context contextNotify;
         ViewGroup view;
         try {
-            final Notification n = openNotification.getNotification();
-            final RemoteViews rvs = n.bigContentView == null ? n.contentView : n.bigContentView;
+            contextNotify = NotificationUtils.createContext(context, openNotification);
+            view = template.obtainView(contextNotify);
+
+            // Inflate the layout only if there's no recycled one.
+            if (view == null) {
+                LayoutInflater inflater = (LayoutInflater) contextNotify
+                        .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+                view = (ViewGroup) inflater.inflate(rvs.getLayoutId(), null);
+            } else {
+                clearTexts(view);
+            }
 
-            // Try to load view from remote views.
-            Context contextNotify = NotificationUtils.createContext(context, openNotification);
-            LayoutInflater inflater = (LayoutInflater) contextNotify.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            view = (ViewGroup) inflater.inflate(rvs.getLayoutId(), null);
             rvs.reapply(contextNotify, view);
         } catch (Exception e) {
             return;
         }
 
+        if (!template.hasIds() || !loadFromTemplate(data, template, view)) {
+            loadFromHierarchy(data, template, context, view);
+        }
+
+        template.recycleView(contextNotify, view);
+    }
+
+    /**
+     * Clears all text views of the recycled layout, so the texts of previous
+     * notification don't stay in the views new one doesn't set.
+     */
+    private static void clearTexts(@NonNull ViewGroup view) {
+        for (int i = view.getChildCount() - 1; i >= 0; i--) {
+            View child = view.getChildAt(i);
+            if (child instanceof TextView) {
+                ((TextView) child).setText(null);
+            } else if (child instanceof ViewGroup) {
+                clearTexts((ViewGroup) child);
+            }
+        }
+    }
+
+    /**
+     * Loads the texts from the views remembered by template.
+     *
+     * @return {@code true} if loaded successfully, {@code false} otherwise.
+     */
+    private boolean loadFromTemplate(@NonNull NotificationData data,
+                                     @NonNull Template template,
+                                     @NonNull ViewGroup view) {
+        final int titleId;
+        final int[] messageIds;
+        synchronized (template) {
+            titleId = template.titleId;
+            messageIds = template.messageIds;
+        }
+
+        CharSequence title = getText(view, titleId);
+        if (title == null || Utils.isBlank(title)) {
+            return false;
+        }
+
+        data.titleText = title;
+
+        final int length = messageIds.length;
+        if (length == 0) {
+            return true;
+        }
+
+        CharSequence[] messages = new CharSequence[length];
+        for (int i = 0; i < length; i++) {
+            messages[i] = getText(view, messageIds[i]);
+        }
+
+        CharSequence message = Utils.mergeLargeMessage(messages);
+        if (!TextUtils.isEmpty(message)) {
+            data.messageText = message;
+        }
+        return true;
+    }
+
+    /**
+     * @return the text of visible text view with given id,
+     * or {@code null} if there's no such view.
+     */
+    @Nullable
+    private CharSequence getText(@NonNull ViewGroup view, int id) {
+        View child = view.findViewById(id);
+        if (child instanceof TextView && child.getVisibility() == View.VISIBLE) {
+            return ((TextView) child).getText();
+        }
+        return null;
+    }
+
+    /**
+     * Finds the title and message views in the hierarchy heuristically,
+     * loads texts from them and remembers their ids in the template.
+     */
+    private void loadFromHierarchy(@NonNull NotificationData data,
+                                   @NonNull Template template,
+                                   @NonNull Context context,
+                                   @NonNull ViewGroup view) {
         ArrayList<TextView> textViews = new RecursiveFinder<>(TextView.class).expand(view);
         removeClickableViews(textViews);
         removeSubtextViews(context, textViews);
-        removeActionViews(data.actions, textViews);
+        removeActionViews(data.getActions(), textViews);
 
         // There're no views present.
         if (textViews.size() == 0)
@@ -154,17 +323,35 @@ public final class Extractor {
         textViews.remove(title); // no need of title view anymore
         data.titleText = title.getText();
 
-        // There're no views present.
-        if (textViews.size() == 0)
-            return;
-
         int length = textViews.size();
         CharSequence[] messages = new CharSequence[length];
+        int[] messageIds = new int[length];
         for (int i = 0; i < length; i++) {
-            messages[i] = textViews.get(i).getText();
+            TextView textView = textViews.get(i);
+            messages[i] = textView.getText();
+            messageIds[i] = textView.getId();
         }
 
-        data.messageText = Utils.mergeLargeMessage(messages);
+        if (length > 0) {
+            data.messageText = Utils.mergeLargeMessage(messages);
+        }
+
+        // Remember the ids only if they point exactly
+        // to found views.
+        if (!isFoundById(view, title)) return;
+        for (TextView textView : textViews) {
+            if (!isFoundById(view, textView)) return;
+        }
+
+        synchronized (template) {
+            template.titleId = title.getId();
+            template.messageIds = messageIds;
+        }
+    }
+
+    private boolean isFoundById(@NonNull ViewGroup view, @NonNull View child) {
+        final int id = child.getId();
+        return id != View.NO_ID && view.findViewById(id) == child;
     }
 
     private TextView findTitleTextView(ArrayList<TextView> textViews) {
@@ -206,15 +393,19 @@ public final class Extractor {
     }
 
     private void removeSubtextViews(Context context, ArrayList<TextView> textViews) {
-        float subtextSize = context.getResources().getDimension(R.dimen.notification_subtext_size);
+        if (Float.isNaN(mSubtextSize)) {
+            mSubtextSize = context.getResources().getDimension(R.dimen.notification_subtext_size);
+        }
+
+        final float subtextSize = mSubtextSize;
         for (int i = textViews.size() - 1; i >= 0; i--) {
             final TextView child = textViews.get(i);
-            final String text = child.getText().toString();
+            final CharSequence text = child.getText();
             if (child.getTextSize() == subtextSize
                     // empty textviews
-                    || text.matches("^(\\s*|)$")
+                    || Utils.isBlank(text)
                     // clock textviews
-                    || text.matches("^\\d{1,2}:\\d{1,2}(\\s?\\w{2}|)$")) {
+                    || Utils.isClock(text)) {
                 textViews.remove(i);
             }
         }
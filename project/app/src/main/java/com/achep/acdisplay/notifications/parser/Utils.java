@@ -36,15 +36,130 @@ final class Utils {
     private static final String TAG = "NotificationParser.Utils";
 
     /**
-     * Removes all kinds of multiple spaces from given string.
+     * Removes leading and trailing whitespaces and collapses multiple line
+     * breaks of given text in a single pass. Spans are preserved, and if there's
+     * nothing to remove the text is returned as is.
      */
-    static String removeSpaces(CharSequence cs) {
+    static CharSequence removeSpaces(CharSequence cs) {
         if (cs == null) return null;
-        String string = cs instanceof String
-                ? (String) cs : cs.toString();
-        return string
-                .replaceAll("(\\s+$|^\\s+)", "")
-                .replaceAll("\n+", "\n");
+        final int length = cs.length();
+
+        int start = 0;
+        int end = length;
+        while (start < end && isWhitespace(cs.charAt(start))) start++;
+        while (end > start && isWhitespace(cs.charAt(end - 1))) end--;
+
+        // Check if there are any multiple line breaks.
+        int i = start + 1;
+        for (; i < end; i++) {
+            if (cs.charAt(i) == '\n' && cs.charAt(i - 1) == '\n') {
+                break;
+            }
+        }
+
+        if (i >= end) {
+            return start == 0 && end == length ? cs : cs.subSequence(start, end);
+        }
+
+        if (cs instanceof Spanned) {
+            SpannableStringBuilder sb = new SpannableStringBuilder(cs, start, end);
+            for (int j = sb.length() - 1; j > 0; j--) {
+                if (sb.charAt(j) == '\n' && sb.charAt(j - 1) == '\n') {
+                    sb.delete(j, j + 1);
+                }
+            }
+            return sb;
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(cs, start, i);
+        for (; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c != '\n' || cs.charAt(i - 1) != '\n') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Same as {@code text.toString().matches("^(\\s*|)$")}, but
+     * without creating any objects.
+     *
+     * @return {@code true} if the text is empty or consists of whitespaces only.
+     */
+    static boolean isBlank(CharSequence text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (!isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@code text.toString().matches("^\\d{1,2}:\\d{1,2}(\\s?\\w{2}|)$")}, but
+     * without creating any objects. Detects time stamps like
+     * {@code 9:41}, {@code 12:05 PM} or {@code 7:30am}.
+     *
+     * @return {@code true} if the text looks like a clock, {@code false} otherwise.
+     */
+    static boolean isClock(CharSequence text) {
+        final int length = text.length();
+        int i = skipDigits(text, 0, length);
+        if (i == 0 || i > 2 || i == length || text.charAt(i) != ':') {
+            return false;
+        }
+
+        // Minutes may be followed by a suffix of digits, so
+        // try both of possible lengths like regex does.
+        final int start = i + 1;
+        final int digits = skipDigits(text, start, length) - start;
+        return digits >= 1 && isClockSuffix(text, start + 1, length)
+                || digits >= 2 && isClockSuffix(text, start + 2, length);
+    }
+
+    /**
+     * Matches the {@code (\\s?\\w{2}|)$} part of clock's regex.
+     */
+    private static boolean isClockSuffix(CharSequence text, int i, int length) {
+        switch (length - i) {
+            case 0:
+                return true;
+            case 3:
+                if (!isWhitespace(text.charAt(i++))) return false;
+            case 2:
+                return isWordChar(text.charAt(i)) && isWordChar(text.charAt(i + 1));
+            default:
+                return false;
+        }
+    }
+
+    private static int skipDigits(CharSequence text, int i, int length) {
+        while (i < length && isDigit(text.charAt(i))) i++;
+        return i;
+    }
+
+    /**
+     * Same as {@code \\s} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same as {@code \\d} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Same as {@code \\w} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c) || c == '_';
     }
 
     static CharSequence mergeLargeMessage(CharSequence[] messages) {
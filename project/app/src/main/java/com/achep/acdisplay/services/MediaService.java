@@ -20,24 +20,33 @@
 package com.achep.acdisplay.services;
 
 import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.media.AudioManager;
 import android.media.RemoteController;
 import android.os.Binder;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
 
 import com.achep.acdisplay.App;
+import com.achep.acdisplay.Build;
 import com.achep.acdisplay.Config;
 import com.achep.acdisplay.Device;
 import com.achep.headsup.R;
+import com.achep.acdisplay.notifications.NotificationCoalescer;
 import com.achep.acdisplay.notifications.NotificationPresenter;
 import com.achep.acdisplay.notifications.OpenNotification;
+import com.achep.acdisplay.notifications.PackageContextCache;
+
+import java.util.ArrayList;
 
 /**
  * Created by achep on 07.06.14.
@@ -53,6 +62,73 @@ public class MediaService extends NotificationListenerService {
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
+    /**
+     * The thread where notifications are being prepared
+     * before being posted to the main looper.
+     *
+     * @see #rockNotification(StatusBarNotification, boolean)
+     */
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+
+    /**
+     * Collapses storms of updates of the same notification
+     * before they are prepared.
+     */
+    private NotificationCoalescer mCoalescer;
+
+    /**
+     * Visuals of notifications are not prepared while the screen is off,
+     * so catch up on the worker thread as soon as it turns on.
+     *
+     * @see NotificationPresenter#prepareNotification(Context, OpenNotification)
+     */
+    private final BroadcastReceiver mScreenOnReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final ArrayList<OpenNotification> list =
+                    new ArrayList<>(NotificationPresenter.getInstance().getList());
+            mWorkerHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (OpenNotification n : list) {
+                        n.getNotificationData().loadVisuals();
+                    }
+                }
+            });
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mCoalescer = new NotificationCoalescer(mWorkerHandler,
+                new NotificationCoalescer.Callback() {
+                    @Override
+                    public void onNotificationReady(OpenNotification n, boolean post) {
+                        handleNotification(n, post);
+                    }
+                });
+
+        registerReceiver(mScreenOnReceiver, new IntentFilter(Intent.ACTION_SCREEN_ON));
+    }
+
+    @Override
+    public void onDestroy() {
+        if (Build.DEBUG) {
+            Log.d(TAG, "Notifications coalesced: " + mCoalescer.getCoalescedCount()
+                    + " processed: " + mCoalescer.getProcessedCount());
+            Log.d(TAG, PackageContextCache.getInstance().toString());
+        }
+
+        unregisterReceiver(mScreenOnReceiver);
+        mWorkerThread.quit();
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         switch (intent.getAction()) {
@@ -92,15 +168,40 @@ public class MediaService extends NotificationListenerService {
         rockNotification(notification, false);
     }
 
+    /**
+     * Passes the notification through the {@link #mCoalescer coalescer} on the
+     * {@link #mWorkerThread worker thread}. Removals go through the worker
+     * thread too, to keep the order of events.
+     *
+     * @see #handleNotification(OpenNotification, boolean)
+     */
     private void rockNotification(final StatusBarNotification sbn, final boolean post) {
-        runOnMainLooper(new Runnable() {
+        mWorkerHandler.post(new Runnable() {
             @Override
             public void run() {
-                OpenNotification n = OpenNotification.newInstance(sbn);
-                NotificationPresenter np = NotificationPresenter.getInstance();
+                mCoalescer.enqueue(OpenNotification.newInstance(sbn), post);
+            }
+        });
+    }
+
+    /**
+     * Parses the notification and loads its icons on the
+     * {@link #mWorkerThread worker thread}, and only then posts it to
+     * the presenter on the main looper.
+     */
+    private void handleNotification(final OpenNotification n, final boolean post) {
+        final NotificationPresenter np = NotificationPresenter.getInstance();
 
+        if (post) {
+            np.prepareNotification(MediaService.this, n);
+        }
+
+        runOnMainLooper(new Runnable() {
+            @Override
+            public void run() {
                 if (post) {
-                    np.postNotification(MediaService.this, n, 0);
+                    np.postNotification(MediaService.this, n,
+                            NotificationPresenter.FLAG_PREPARED);
                 } else {
                     np.removeNotification(n);
                 }
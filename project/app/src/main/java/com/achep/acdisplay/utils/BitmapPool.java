@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.achep.acdisplay.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps bucketed by size and config. Bitmaps are
+ * {@link #obtain(int, int, Bitmap.Config) obtained} with one reference,
+ * every user that keeps a bitmap (to display it, for example) should
+ * {@link #acquire(Bitmap) acquire} it and {@link #release(Bitmap) release}
+ * it after. When the last reference is released the bitmap goes back to
+ * the pool to be reused.
+ * <p>
+ * Acquiring and releasing bitmaps that were not obtained from the pool
+ * does nothing, so it's safe to do that with any bitmap.
+ * </p>
+ * <p>
+ * Long-living owners, such as views, should hold {@link Handle handles}
+ * instead of raw references: handles can be released only once and,
+ * in debug builds, report owners that forgot to release them.
+ * </p>
+ *
+ * @author Artem Chepurnoy
+ */
+public final class BitmapPool {
+
+    private static final String TAG = "BitmapPool";
+
+    /**
+     * The maximum size of free bitmaps in bytes.
+     */
+    private static final int MAX_SIZE = 2 * 1024 * 1024; // 2 MiB
+
+    private static BitmapPool sInstance;
+
+    /**
+     * Free bitmaps, keyed by {@link #createKey(int, int, Bitmap.Config) size and config}.
+     */
+    private final HashMap<Long, ArrayList<Bitmap>> mFree = new HashMap<>();
+
+    /**
+     * Free bitmaps in order they were released, to evict the oldest ones first.
+     */
+    private final LinkedList<Bitmap> mFreeOrder = new LinkedList<>();
+
+    /**
+     * Reference counts of bitmaps in use.
+     */
+    private final IdentityHashMap<Bitmap, int[]> mRefs = new IdentityHashMap<>();
+
+    private int mFreeSize;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mHandleCount;
+
+    /**
+     * The owned reference to a bitmap.
+     *
+     * @see #acquireHandle(Bitmap)
+     */
+    public static final class Handle {
+
+        private final LeakGuard mGuard;
+        private Bitmap mBitmap;
+
+        private Handle(@Nullable Bitmap bitmap) {
+            mBitmap = bitmap;
+            mGuard = Build.DEBUG && bitmap != null ? new LeakGuard(bitmap) : null;
+        }
+
+        /**
+         * @return the bitmap, or {@code null} if the handle is released.
+         */
+        @Nullable
+        public synchronized Bitmap get() {
+            return mBitmap;
+        }
+
+        /**
+         * Releases the bitmap. Does nothing if it's already released.
+         */
+        public synchronized void release() {
+            if (mBitmap != null) {
+                if (mGuard != null) mGuard.disarm();
+                getInstance().releaseHandle(mBitmap);
+                mBitmap = null;
+            }
+        }
+
+    }
+
+    /**
+     * Reports the {@link Handle handle} that was garbage collected without being
+     * released, and releases its bitmap. Guards are created in debug builds only,
+     * so handles have no finalizers in release ones.
+     */
+    private static final class LeakGuard {
+
+        private final Throwable mOrigin = new Throwable("The handle was acquired here");
+        private Bitmap mBitmap;
+
+        private LeakGuard(@NonNull Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+
+        synchronized void disarm() {
+            mBitmap = null;
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            try {
+                final Bitmap bitmap;
+                synchronized (this) {
+                    bitmap = mBitmap;
+                    mBitmap = null;
+                }
+
+                if (bitmap != null) {
+                    Log.w(TAG, "Leaked a handle of " + bitmap, mOrigin);
+                    getInstance().releaseHandle(bitmap);
+                }
+            } finally {
+                super.finalize();
+            }
+        }
+
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool();
+        }
+        return sInstance;
+    }
+
+    private BitmapPool() { /* empty */ }
+
+    private static long createKey(int width, int height, @NonNull Bitmap.Config config) {
+        return (long) width << 36 | (long) height << 8 | config.ordinal();
+    }
+
+    /**
+     * Returns the transparent mutable bitmap of given size and config, reusing
+     * a free one if possible. The bitmap has one reference: {@link #release(Bitmap) release}
+     * it when it's not needed anymore.
+     */
+    @NonNull
+    public synchronized Bitmap obtain(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = null;
+
+        ArrayList<Bitmap> bucket = mFree.get(createKey(width, height, config));
+        if (bucket != null && bucket.size() > 0) {
+            bitmap = bucket.remove(bucket.size() - 1);
+            mFreeOrder.remove(bitmap);
+            mFreeSize -= bitmap.getByteCount();
+            bitmap.eraseColor(Color.TRANSPARENT);
+            mHitCount++;
+        } else {
+            bitmap = Bitmap.createBitmap(width, height, config);
+            mMissCount++;
+        }
+
+        mRefs.put(bitmap, new int[]{1});
+        return bitmap;
+    }
+
+    /**
+     * Adds a reference to given bitmap, so it won't be reused until
+     * the reference is {@link #release(Bitmap) released}.
+     */
+    public synchronized void acquire(@Nullable Bitmap bitmap) {
+        int[] refs = mRefs.get(bitmap);
+        if (refs != null) refs[0]++;
+    }
+
+    /**
+     * Adds a reference to given bitmap, owned by the returned handle.
+     *
+     * @see Handle#release()
+     */
+    @NonNull
+    public synchronized Handle acquireHandle(@Nullable Bitmap bitmap) {
+        acquire(bitmap);
+        if (bitmap != null) mHandleCount++;
+        return new Handle(bitmap);
+    }
+
+    private synchronized void releaseHandle(@NonNull Bitmap bitmap) {
+        mHandleCount--;
+        release(bitmap);
+    }
+
+    /**
+     * Removes a reference from given bitmap. The bitmap goes back to the
+     * pool after the last reference is released.
+     */
+    public synchronized void release(@Nullable Bitmap bitmap) {
+        int[] refs = mRefs.get(bitmap);
+        if (refs == null || --refs[0] > 0) {
+            return;
+        }
+
+        mRefs.remove(bitmap);
+        if (bitmap.isRecycled()) {
+            return;
+        }
+
+        final int size = bitmap.getByteCount();
+        if (size > MAX_SIZE) {
+            bitmap.recycle();
+            return;
+        }
+
+        trimToSize(MAX_SIZE - size);
+
+        long key = createKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bucket = mFree.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(2);
+            mFree.put(key, bucket);
+        }
+        bucket.add(bitmap);
+        mFreeOrder.addLast(bitmap);
+        mFreeSize += size;
+    }
+
+    /**
+     * Recycles all free bitmaps.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(int size) {
+        while (mFreeSize > size) {
+            Bitmap bitmap = mFreeOrder.removeFirst();
+            long key = createKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            mFree.get(key).remove(bitmap);
+            mFreeSize -= bitmap.getByteCount();
+            bitmap.recycle();
+        }
+
+        if (Build.DEBUG && size == 0) Log.d(TAG, "Trimmed: " + toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool ["
+                + "hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " in_use=" + mRefs.size()
+                + " handles=" + mHandleCount
+                + " free_size=" + mFreeSize
+                + "]";
+    }
+
+}
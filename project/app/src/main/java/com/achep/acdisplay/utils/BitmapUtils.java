@@ -20,14 +20,12 @@
 package com.achep.acdisplay.utils;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapShader;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Shader;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.Arrays;
+
 /**
  * Created by Artem on 24.03.2014.
  */
@@ -40,20 +38,101 @@ public class BitmapUtils {
         if (bitmap != null) bitmap.recycle();
     }
 
+    //-- PALETTE --------------------------------------------------------------
+
+    /**
+     * The maximum number of sampled pixels per side of a bitmap.
+     */
+    private static final int PALETTE_SAMPLES = 48;
+
+    private static final Object sPaletteLock = new Object();
+
+    // Reusable buffers of the quantizer: a row of pixels,
+    // and the population and the sums of channels of each
+    // of 4096 colors (4 bits per channel).
+    private static int[] sPaletteRow = new int[0];
+    private static final int[] sPaletteCount = new int[4096];
+    private static final int[] sPaletteRed = new int[4096];
+    private static final int[] sPaletteGreen = new int[4096];
+    private static final int[] sPaletteBlue = new int[4096];
+
+    /**
+     * Returns the most common opaque color of the bitmap, or
+     * {@link Color#TRANSPARENT} if the bitmap is fully transparent.
+     * <p>
+     * Quantizes a strided subset of pixels of the bitmap, so only
+     * {@link #PALETTE_SAMPLES} x {@link #PALETTE_SAMPLES} pixels are read at most.
+     * Translucent pixels are ignored. Nothing is allocated, except the row
+     * buffer growing to the width of the widest bitmap.
+     * </p>
+     */
     public static int getDominantColor(@NonNull Bitmap bitmap) {
-        Bitmap onePixelBitmap = Bitmap.createScaledBitmap(bitmap, 1, 1, true);
-        int color = onePixelBitmap.getPixel(0,0);
-        onePixelBitmap.recycle();
-        return color;
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int stepX = Math.max(1, width / PALETTE_SAMPLES);
+        final int stepY = Math.max(1, height / PALETTE_SAMPLES);
+
+        synchronized (sPaletteLock) {
+            if (sPaletteRow.length < width) sPaletteRow = new int[width];
+            final int[] row = sPaletteRow;
+            final int[] count = sPaletteCount;
+            final int[] red = sPaletteRed;
+            final int[] green = sPaletteGreen;
+            final int[] blue = sPaletteBlue;
+            Arrays.fill(count, 0);
+            Arrays.fill(red, 0);
+            Arrays.fill(green, 0);
+            Arrays.fill(blue, 0);
+
+            for (int y = stepY / 2; y < height; y += stepY) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                for (int x = stepX / 2; x < width; x += stepX) {
+                    final int color = row[x];
+                    if (color >>> 24 < 0x80) {
+                        continue; // ignore translucent pixels
+                    }
+
+                    final int r = (color >> 16) & 0xFF;
+                    final int g = (color >> 8) & 0xFF;
+                    final int b = color & 0xFF;
+                    final int i = (r & 0xF0) << 4 | (g & 0xF0) | (b >> 4);
+                    count[i]++;
+                    red[i] += r;
+                    green[i] += g;
+                    blue[i] += b;
+                }
+            }
+
+            int i = -1;
+            for (int j = 0; j < 4096; j++) {
+                if (count[j] > 0 && (i == -1 || count[j] > count[i])) {
+                    i = j;
+                }
+            }
+
+            if (i == -1) {
+                return Color.TRANSPARENT;
+            }
+
+            final int n = count[i];
+            return Color.rgb(red[i] / n, green[i] / n, blue[i] / n);
+        }
     }
 
+    private static CircleBitmapRenderer sCircleRenderer;
+
+    private static synchronized CircleBitmapRenderer getCircleRenderer() {
+        if (sCircleRenderer == null) {
+            sCircleRenderer = new CircleBitmapRenderer();
+        }
+        return sCircleRenderer;
+    }
+
+    /**
+     * @see CircleBitmapRenderer#hasTransparentCorners(Bitmap)
+     */
     public static boolean hasTransparentCorners(@NonNull Bitmap bitmap) {
-        int right = bitmap.getWidth() - 1;
-        int bottom = bitmap.getHeight() - 1;
-        return bitmap.getPixel(0, 0) == Color.TRANSPARENT
-                || bitmap.getPixel(right, 0) == Color.TRANSPARENT
-                || bitmap.getPixel(0, bottom) == Color.TRANSPARENT
-                || bitmap.getPixel(right, bottom) == Color.TRANSPARENT;
+        return getCircleRenderer().hasTransparentCorners(bitmap);
     }
 
     /**
@@ -65,21 +144,26 @@ public class BitmapUtils {
      */
     @NonNull
     public static Bitmap createCircleBitmap(@NonNull Bitmap bitmap) {
-        final int width = bitmap.getWidth();
-        final int height = bitmap.getHeight();
-
-        BitmapShader bitmapShader = new BitmapShader(bitmap,
-                Shader.TileMode.CLAMP,
-                Shader.TileMode.CLAMP);
-        Paint bitmapPaint = new Paint();
-        bitmapPaint.setAntiAlias(true);
-        bitmapPaint.setShader(bitmapShader);
-
-        Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(output);
-        canvas.drawCircle(width / 2, height / 2, Math.min(width, height) / 2, bitmapPaint);
+        return createCircleBitmap(bitmap, 0, null);
+    }
 
-        return output;
+    /**
+     * Create a bitmap which is wrapped to circle, downsampling the centered square
+     * of original bitmap to given size on the fly. No scaled copy of original bitmap
+     * is created, so the peak memory usage is bounded by the size of output.
+     *
+     * @param bitmap Original Bitmap
+     * @param size   the maximum diameter of the circle in pixels, or {@code 0} to keep
+     *               the original size. Bitmaps are never upscaled.
+     * @param reuse  the mutable {@link Bitmap.Config#ARGB_8888 ARGB_8888} bitmap to draw the
+     *               circle to, if it has suitable size. May be {@code null}.
+     * @return Circled bitmap. If it's not the reused one, it's obtained from
+     * the {@link BitmapPool pool}, so release it when it's not needed anymore.
+     */
+    @NonNull
+    public static Bitmap createCircleBitmap(@NonNull Bitmap bitmap, int size,
+                                            @Nullable Bitmap reuse) {
+        return getCircleRenderer().render(bitmap, size, reuse);
     }
 
     @NonNull
@@ -322,4 +406,14 @@ public class BitmapUtils {
         return bitmap;
     }
 
+    /**
+     * Frees the row buffer of the palette. It grows to the width
+     * of the widest bitmap seen.
+     */
+    public static void trimMemory() {
+        synchronized (sPaletteLock) {
+            sPaletteRow = new int[0];
+        }
+    }
+
 }
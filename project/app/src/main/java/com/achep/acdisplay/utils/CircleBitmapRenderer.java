@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Renders bitmaps wrapped to circle (similar to what you can see in G+ profile pic.)
+ * The paint, the canvas, the matrix and the buffer of pixels are reused between
+ * renders, so only the shader of the source bitmap is created each time.
+ *
+ * @author Artem Chepurnoy
+ * @see BitmapUtils#createCircleBitmap(Bitmap, int, Bitmap)
+ */
+public class CircleBitmapRenderer {
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Canvas mCanvas = new Canvas();
+    private final Matrix mMatrix = new Matrix();
+
+    private int[] mPixels = new int[0];
+
+    /**
+     * @return {@code true} if any of the corners of the bitmap is transparent,
+     * so it's probably not a profile photo.
+     */
+    public synchronized boolean hasTransparentCorners(@NonNull Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (mPixels.length < width * 2) mPixels = new int[width * 2];
+        final int[] pixels = mPixels;
+
+        // Read the top and the bottom rows.
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, 1);
+        bitmap.getPixels(pixels, width, width, 0, height - 1, width, 1);
+
+        final int right = width - 1;
+        return pixels[0] == Color.TRANSPARENT
+                || pixels[right] == Color.TRANSPARENT
+                || pixels[width] == Color.TRANSPARENT
+                || pixels[width + right] == Color.TRANSPARENT;
+    }
+
+    /**
+     * Renders the centered square of original bitmap wrapped to circle,
+     * downsampling it to given size on the fly.
+     *
+     * @param bitmap Original Bitmap
+     * @param size   the maximum diameter of the circle in pixels, or {@code 0} to keep
+     *               the original size. Bitmaps are never upscaled.
+     * @param reuse  the mutable {@link Bitmap.Config#ARGB_8888 ARGB_8888} bitmap to draw the
+     *               circle to, if it has suitable size. May be {@code null}.
+     * @return Circled bitmap. If it's not the reused one, it's obtained from
+     * the {@link BitmapPool pool}, so release it when it's not needed anymore.
+     */
+    @NonNull
+    public synchronized Bitmap render(@NonNull Bitmap bitmap, int size, @Nullable Bitmap reuse) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int min = Math.min(width, height);
+        final int diameter = size > 0 ? Math.min(size, min) : min;
+
+        Bitmap output;
+        if (reuse != null && reuse.isMutable() && !reuse.isRecycled()
+                && reuse.getConfig() == Bitmap.Config.ARGB_8888
+                && reuse.getWidth() == diameter
+                && reuse.getHeight() == diameter) {
+            output = reuse;
+            output.eraseColor(Color.TRANSPARENT);
+        } else {
+            output = BitmapPool.getInstance().obtain(diameter, diameter, Bitmap.Config.ARGB_8888);
+        }
+
+        // Move the centered square of original bitmap to
+        // the output and scale it down.
+        final float scale = (float) diameter / min;
+        mMatrix.setTranslate(-(width - min) / 2f, -(height - min) / 2f);
+        mMatrix.postScale(scale, scale);
+
+        // The shader is bound to the bitmap, so it can't be reused.
+        BitmapShader shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(mMatrix);
+        mPaint.setShader(shader);
+
+        final float radius = diameter / 2f;
+        mCanvas.setBitmap(output);
+        mCanvas.drawCircle(radius, radius, radius, mPaint);
+
+        // Do not hold the bitmaps.
+        mCanvas.setBitmap(null);
+        mPaint.setShader(null);
+        return output;
+    }
+
+}
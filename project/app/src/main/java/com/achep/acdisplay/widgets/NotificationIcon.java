@@ -26,6 +26,7 @@ import android.widget.ImageView;
 
 import com.achep.acdisplay.notifications.NotificationData;
 import com.achep.acdisplay.notifications.OpenNotification;
+import com.achep.acdisplay.utils.BitmapPool;
 
 /**
  * Created by Artem on 25.03.2014.
@@ -37,6 +38,7 @@ public class NotificationIcon extends ImageView implements
     private boolean mAttached;
 
     private OpenNotification mNotification;
+    private BitmapPool.Handle mIconHandle;
     private int mIconAlpha;
 
     private boolean mAdjustAlphaEnabled = true;
@@ -95,6 +97,14 @@ public class NotificationIcon extends ImageView implements
 
         NotificationData data = mNotification.getNotificationData();
         data.unregisterListener(this);
+
+        // The icon is not tracked anymore, so it may be
+        // reused by the pool.
+        if (mIconHandle != null) {
+            mIconHandle.release();
+            mIconHandle = null;
+            setImageDrawable(null);
+        }
     }
 
     @Override
@@ -126,6 +136,11 @@ public class NotificationIcon extends ImageView implements
     }
 
     private void handleIconChanged(Bitmap icon) {
+        // Own the icon while it's displayed.
+        BitmapPool.Handle handle = mIconHandle;
+        mIconHandle = BitmapPool.getInstance().acquireHandle(icon);
+        if (handle != null) handle.release();
+
         setImageBitmap(icon);
         setImageAlpha(mIconAlpha);
     }
@@ -28,6 +28,8 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.ColorMatrixColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.Nullable;
 import android.text.SpannableString;
@@ -47,6 +49,7 @@ import com.achep.acdisplay.notifications.Action;
 import com.achep.acdisplay.notifications.NotificationData;
 import com.achep.acdisplay.notifications.NotificationUtils;
 import com.achep.acdisplay.notifications.OpenNotification;
+import com.achep.acdisplay.utils.BitmapPool;
 import com.achep.acdisplay.utils.BitmapUtils;
 import com.achep.acdisplay.utils.ViewUtils;
 
@@ -68,6 +71,7 @@ public class NotificationWidget extends LinearLayout implements NotificationView
     @Nullable
     private NotificationIcon mSmallIcon;
     private NotificationIcon mIcon;
+    private BitmapPool.Handle mLargeIconHandle;
     private TextView mTitleTextView;
     private TextView mWhenTextView;
     private TextView mSubtextTextView;
@@ -156,7 +160,14 @@ public class NotificationWidget extends LinearLayout implements NotificationView
         mActionsContainer = (ViewGroup) findViewById(R.id.actions);
         mActionsDivider = findViewById(R.id.actions_divider);
 
-        if (mSmallIcon != null) mSmallIcon.setNotificationIndicateReadStateEnabled(false);
+        if (mSmallIcon != null) {
+            mSmallIcon.setNotificationIndicateReadStateEnabled(false);
+
+            // The background gets tinted with the app's color, so
+            // it must not share its state with other widgets.
+            Drawable background = mSmallIcon.getBackground();
+            if (background != null) background.mutate();
+        }
         mIcon.setNotificationIndicateReadStateEnabled(false);
     }
 
@@ -183,7 +194,7 @@ public class NotificationWidget extends LinearLayout implements NotificationView
      */
     @SuppressLint("NewApi")
     protected void setActions(OpenNotification osbn) {
-        Action[] actions = osbn.getNotificationData().actions;
+        Action[] actions = osbn.getNotificationData().getActions();
         if (actions == null) {
             // Hide actions container. Do not delete all views
             // because we may re-use them later.
@@ -405,6 +416,65 @@ public class NotificationWidget extends LinearLayout implements NotificationView
         }
     }
 
+    /**
+     * Tints the background of {@link #mSmallIcon small icon} with given color,
+     * or restores the theme's one if the color is too light for the white icon.
+     */
+    private void setSmallIconColor(int color) {
+        Drawable background = mSmallIcon != null ? mSmallIcon.getBackground() : null;
+        if (background != null) {
+            background.setColorFilter(color != Color.TRANSPARENT && !isLightColor(color)
+                    ? new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN)
+                    : null);
+        }
+    }
+
+    private static boolean isLightColor(int color) {
+        return Color.red(color) > 127
+                && Color.blue(color) > 127
+                && Color.green(color) > 127;
+    }
+
+    /**
+     * Releases the bitmaps owned by this widget. The widget should be
+     * {@link #setNotification(OpenNotification) bound} again before
+     * it is shown.
+     */
+    protected void releaseBitmaps() {
+        if (mLargeIconHandle != null) {
+            mLargeIconHandle.release();
+            mLargeIconHandle = null;
+            mIcon.setImageDrawable(null);
+        }
+    }
+
+    /**
+     * Drops everything that was bound from previous notification: stops tracking
+     * its icons, releases the bitmaps and clears the texts, messages and actions.
+     */
+    private void unbind() {
+        releaseBitmaps();
+        mIcon.setNotification(null);
+        mIcon.setImageDrawable(null);
+        setSmallIcon(null);
+
+        mTitleTextView.setText(null);
+        mSubtextTextView.setText(null);
+        mWhenTextView.setText(null);
+
+        // Keep the message views to be reused.
+        for (int i = mMessageContainer.getChildCount() - 1; i >= 0; i--) {
+            View child = mMessageContainer.getChildAt(i);
+            if (child instanceof TextView) ((TextView) child).setText(null);
+        }
+        setMessageLines(null);
+
+        // Action views hold pending intents of the notification.
+        mActionsContainer.removeAllViews();
+        mActionsContainer.setVisibility(GONE);
+        mActionsDivider.setVisibility(GONE);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -420,7 +490,7 @@ public class NotificationWidget extends LinearLayout implements NotificationView
     public void setNotification(OpenNotification osbn) {
         mNotification = osbn;
         if (osbn == null) {
-            // TODO: Hide everything or show a notice to user.
+            unbind();
             return;
         }
 
@@ -429,14 +499,18 @@ public class NotificationWidget extends LinearLayout implements NotificationView
 
         Bitmap bitmap = data.getCircleIcon();
         if (bitmap == null) bitmap = n.largeIcon;
+
+        // Own the large icon while it's displayed.
+        BitmapPool.Handle handle = mLargeIconHandle;
+        mLargeIconHandle = BitmapPool.getInstance().acquireHandle(bitmap);
+        if (handle != null) handle.release();
+
         if (bitmap != null) {
             if (bitmap == n.largeIcon
                     // Not a profile icon.
                     && BitmapUtils.hasTransparentCorners(bitmap)
                     // Icon has white color.
-                    && Color.red(data.dominantColor) > 127
-                    && Color.blue(data.dominantColor) > 127
-                    && Color.green(data.dominantColor) > 127
+                    && isLightColor(data.getLargeIconColor())
                     // Title text is dark.
                     && hasDarkTextColor(mTitleTextView)) {
                 // The icon is PROBABLY not a profile icon,
@@ -453,6 +527,7 @@ public class NotificationWidget extends LinearLayout implements NotificationView
             mIcon.setImageBitmap(bitmap);
 
             setSmallIcon(osbn);
+            setSmallIconColor(data.getAppColor());
         } else {
             mIcon.setNotification(osbn);
             mIcon.setColorFilter(hasDarkTextColor(mTitleTextView)
@@ -461,20 +536,24 @@ public class NotificationWidget extends LinearLayout implements NotificationView
             setSmallIcon(null);
         }
 
-        mTitleTextView.setText(data.titleBigText == null
-                ? data.titleText
-                : data.titleBigText);
-        mSubtextTextView.setText(data.infoText == null
-                ? data.subText
-                : data.infoText);
+        CharSequence titleBigText = data.getTitleBigText();
+        CharSequence infoText = data.getInfoText();
+        mTitleTextView.setText(titleBigText == null
+                ? data.getTitleText()
+                : titleBigText);
+        mSubtextTextView.setText(infoText == null
+                ? data.getSubText()
+                : infoText);
         mWhenTextView.setText(DateUtils.formatDateTime(
                 getContext(),  n.when, DateUtils.FORMAT_SHOW_TIME));
 
         setActions(osbn);
-        setMessageLines(data.messageTextLines == null
-                ? data.messageText == null
-                ? null : new CharSequence[] {data.messageText}
-                : data.messageTextLines);
+        CharSequence[] messageTextLines = data.getMessageTextLines();
+        CharSequence messageText = data.getMessageText();
+        setMessageLines(messageTextLines == null
+                ? messageText == null
+                ? null : new CharSequence[] {messageText}
+                : messageTextLines);
     }
 
 }
@@ -9,8 +9,11 @@ import android.content.IntentFilter;
 import android.content.res.TypedArray;
 import android.graphics.PixelFormat;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.view.ContextThemeWrapper;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -38,6 +41,7 @@ import com.achep.acdisplay.widgets.NotificationWidget;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Class that manages notifications and shows them in popups.
@@ -46,7 +50,7 @@ import java.util.HashMap;
  * @author Artem Chepurnoy
  */
 public class HeadsUpManager implements
-        NotificationPresenter.OnNotificationListChangedListener {
+        NotificationPresenter.OnNotificationListBatchChangedListener {
 
     private static final String TAG = "HeadsUpManager";
 
@@ -55,7 +59,13 @@ public class HeadsUpManager implements
      */
     private static final long DURATION = 5000; // ms.
 
+    /**
+     * The maximum number of recycled widgets kept per theme.
+     */
+    private static final int MAX_POOL_SIZE = 3;
+
     private final Config mConfig;
+    private final ConfigListener mConfigListener;
 
     private Animation mEnterAnimation;
     private Animation mExitAnimation;
@@ -65,8 +75,18 @@ public class HeadsUpManager implements
 
     private ArrayList<NotificationWidget> mWidgetList;
     private HashMap<NotificationWidget, Runnable> mWidgetDecayMap;
+    private SparseArray<ArrayList<HeadsUpNotificationView>> mWidgetPool;
     private Handler mHandler;
 
+    /**
+     * The context of selected theme, or {@code null} if
+     * the theme is not {@link #resolveTheme() resolved} yet.
+     */
+    private Context mThemeContext;
+    private LayoutInflater mThemeInflater;
+    private int mThemeRes;
+    private int mLayoutRes;
+
     private Context mContext;
     private boolean mAttached;
     private boolean mIgnoreShowing;
@@ -91,6 +111,27 @@ public class HeadsUpManager implements
             } else {
                 mRootView.preventInstantInteractivity();
                 mContainer.removeView(widget);
+                recycleWidget((HeadsUpNotificationView) widget);
+            }
+        }
+    }
+
+    /**
+     * Listens to config to drop the resolved theme when it's changed.
+     */
+    private class ConfigListener implements Config.OnConfigChangedListener {
+
+        @Override
+        public void onConfigChanged(@NonNull Config config,
+                                    @NonNull String key,
+                                    @NonNull Object value) {
+            switch (key) {
+                case Config.KEY_UI_THEME:
+                    // Widgets of previous theme won't be
+                    // needed anymore.
+                    invalidateTheme();
+                    mWidgetPool.clear();
+                    break;
             }
         }
     }
@@ -115,9 +156,11 @@ public class HeadsUpManager implements
 
     public HeadsUpManager() {
         mConfig = Config.getInstance();
+        mConfigListener = new ConfigListener();
 
         mWidgetList = new ArrayList<>();
         mWidgetDecayMap = new HashMap<>();
+        mWidgetPool = new SparseArray<>();
         mHandler = new Handler();
     }
 
@@ -147,13 +190,33 @@ public class HeadsUpManager implements
         filter.addAction(App.ACTION_EAT_HOME_PRESS_STOP);
         mContext.registerReceiver(mReceiver, filter);
         NotificationPresenter.getInstance().registerListener(this);
+        mConfig.registerListener(mConfigListener);
+
+        // Inflate the first widget while nothing happens, so
+        // the first heads-up appears without the inflation lag.
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (mContext != null) {
+                    resolveTheme();
+                    ArrayList<HeadsUpNotificationView> pool = mWidgetPool.get(mThemeRes);
+                    if (pool == null || pool.isEmpty()) {
+                        recycleWidget(inflateWidget());
+                    }
+                }
+                return false;
+            }
+        });
     }
 
     public void stop() {
         mContext.unregisterReceiver(mReceiver);
         NotificationPresenter.getInstance().unregisterListener(this);
+        mConfig.unregisterListener(mConfigListener);
         detach();
 
+        invalidateTheme();
+        mWidgetPool.clear();
         mContext = null;
         mRootView = null;
         mContainer = null;
@@ -164,19 +227,38 @@ public class HeadsUpManager implements
     }
 
     @Override
-    public void onNotificationListChanged(
+    public void onNotificationListBatchChanged(
             @NonNull NotificationPresenter np,
-            @NonNull OpenNotification osbn, int event) {
+            @NonNull List<NotificationPresenter.Delta> deltas) {
         if (mIgnoreShowing || !PowerUtils.isScreenOn(mContext)) {
             return;
         }
 
+        // Apply all changes of existing widgets
+        // within one transition.
+        for (NotificationPresenter.Delta delta : deltas) {
+            if (delta.event == NotificationPresenter.EVENT_CHANGED
+                    && indexOf(delta.notification) != -1) {
+                TransitionManager.beginDelayedTransition(mContainer);
+                break;
+            }
+        }
+
+        for (NotificationPresenter.Delta delta : deltas) {
+            if (delta.notification != null) {
+                handleNotificationEvent(delta.notification, delta.event);
+            }
+        }
+    }
+
+    private void handleNotificationEvent(@NonNull OpenNotification osbn, int event) {
         switch (event) {
             case NotificationPresenter.EVENT_POSTED:
                 // Don't overlay option's code.
                 String packageName = ActivityUtils.getCurrentRunningActivityPackage(mContext);
                 if (packageName != null) {
-                    AppConfig appConfig = Blacklist.getInstance().getAppConfig(packageName);
+                    AppConfig.Snapshot appConfig =
+                            Blacklist.getInstance().getAppConfigSnapshot(packageName);
                     if (appConfig.isDontOverlayEnabled()) {
                         return;
                     }
@@ -212,8 +294,6 @@ public class HeadsUpManager implements
                 if (i == -1) {
                     postNotification(osbn);
                 } else {
-                    TransitionManager.beginDelayedTransition(mContainer);
-
                     widget = mWidgetList.get(i);
                     widget.setNotification(osbn);
 
@@ -292,31 +372,113 @@ public class HeadsUpManager implements
      * @param n the notification to show
      */
     private void postNotification(@NonNull OpenNotification n) {
+        final HeadsUpNotificationView widget = obtainWidget();
+        widget.setNotification(n);
+
+        mRootView.preventInstantInteractivity();
+        mContainer.addView(widget);
+        mWidgetList.add(widget);
+        widget.setAlpha(0);
+        widget.setRotationX(-15);
+        widget.animate().alpha(1).rotationX(0).setDuration(300);
+
+        // Attaches heads-up to window.
+        attach();
+
+        // Timed-out runnable.
+        Runnable runnable = new DecayRunnable(widget);
+        mWidgetDecayMap.put(widget, runnable);
+        mHandler.postDelayed(runnable, mConfig.getNotifyDecayTime());
+    }
+
+    /**
+     * Resolves the context, the layout inflater and the notification's layout of
+     * selected theme, if they are not resolved yet.
+     *
+     * @see #invalidateTheme()
+     */
+    private void resolveTheme() {
+        if (mThemeContext != null) {
+            return;
+        }
+
         // Get selected theme.
-        final String theme = Config.getInstance().getTheme();
-        final int themeRes = theme.equals("dark")
+        final String theme = mConfig.getTheme();
+        mThemeRes = theme.equals("dark")
                 ? R.style.HeadsUp_Theme_Dark
                 : R.style.HeadsUp_Theme;
 
         // Create a context with selected style.
-        Context context = new ContextThemeWrapper(mContext, themeRes);
+        mThemeContext = new ContextThemeWrapper(mContext, mThemeRes);
+        mThemeInflater = (LayoutInflater) mThemeContext
+                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 
         // Get layout resource.
-        TypedArray typedArray = context.obtainStyledAttributes(
+        TypedArray typedArray = mThemeContext.obtainStyledAttributes(
                 new int[] {R.styleable.Theme_headsUpNotificationLayout});
-        final int layoutRes = typedArray.getInt(0, R.layout.heads_up_notification);
+        mLayoutRes = typedArray.getInt(0, R.layout.heads_up_notification);
         typedArray.recycle();
-        typedArray = null;
+    }
 
-        // Inflate notification widget.
-        final LayoutInflater inflater = (LayoutInflater) context
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        final HeadsUpNotificationView widget = (HeadsUpNotificationView) inflater
-                .inflate(layoutRes, mContainer, false);
+    /**
+     * Drops the resolved theme, so it will be resolved
+     * again on next use.
+     *
+     * @see #resolveTheme()
+     */
+    private void invalidateTheme() {
+        mThemeContext = null;
+        mThemeInflater = null;
+    }
+
+    /**
+     * Returns the recycled widget of selected theme, or inflates
+     * new one if there's none.
+     *
+     * @see #recycleWidget(HeadsUpNotificationView)
+     */
+    @NonNull
+    private HeadsUpNotificationView obtainWidget() {
+        resolveTheme();
+        ArrayList<HeadsUpNotificationView> pool = mWidgetPool.get(mThemeRes);
+        if (pool != null && !pool.isEmpty()) {
+            return pool.remove(pool.size() - 1);
+        }
+
+        return inflateWidget();
+    }
+
+    /**
+     * Resets given widget and puts it to the pool of its theme,
+     * if the pool is not full.
+     *
+     * @see #obtainWidget()
+     */
+    private void recycleWidget(@NonNull HeadsUpNotificationView widget) {
+        final int themeRes = (int) widget.getTag(R.id.heads_up_theme);
+        ArrayList<HeadsUpNotificationView> pool = mWidgetPool.get(themeRes);
+        if (pool == null) {
+            pool = new ArrayList<>(MAX_POOL_SIZE);
+            mWidgetPool.put(themeRes, pool);
+        } else if (pool.size() >= MAX_POOL_SIZE) {
+            return;
+        }
+
+        widget.reset();
+        pool.add(widget);
+    }
+
+    /**
+     * Inflates new widget of {@link #resolveTheme() resolved} theme.
+     */
+    @NonNull
+    private HeadsUpNotificationView inflateWidget() {
+        final HeadsUpNotificationView widget = (HeadsUpNotificationView) mThemeInflater
+                .inflate(mLayoutRes, mContainer, false);
 
         // Setup widget
+        widget.setTag(R.id.heads_up_theme, mThemeRes);
         widget.setHeadsUpManager(this);
-        widget.setNotification(n);
         widget.setOnClickListener(new NotificationWidget.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -329,21 +491,7 @@ public class HeadsUpManager implements
                 widget.getNotification().dismiss();
             }
         });
-
-        mRootView.preventInstantInteractivity();
-        mContainer.addView(widget);
-        mWidgetList.add(widget);
-        widget.setAlpha(0);
-        widget.setRotationX(-15);
-        widget.animate().alpha(1).rotationX(0).setDuration(300);
-
-        // Attaches heads-up to window.
-        attach();
-
-        // Timed-out runnable.
-        Runnable runnable = new DecayRunnable(widget);
-        mWidgetDecayMap.put(widget, runnable);
-        mHandler.postDelayed(runnable, mConfig.getNotifyDecayTime());
+        return widget;
     }
 
     private void attach() {
@@ -377,6 +525,12 @@ public class HeadsUpManager implements
         // Clean everything.
         mHandler.removeCallbacksAndMessages(null);
         mContainer.clearAnimation();
+        for (int i = mContainer.getChildCount() - 1; i >= 0; i--) {
+            View child = mContainer.getChildAt(i);
+            if (child instanceof HeadsUpNotificationView) {
+                recycleWidget((HeadsUpNotificationView) child);
+            }
+        }
         mContainer.removeAllViews();
         mWidgetList.clear();
         mWidgetDecayMap.clear();
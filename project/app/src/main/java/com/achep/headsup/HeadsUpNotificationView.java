@@ -10,6 +10,7 @@ import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewGroup;
 
 import com.achep.acdisplay.Device;
 import com.achep.acdisplay.notifications.OpenNotification;
@@ -79,6 +80,32 @@ public class HeadsUpNotificationView extends NotificationWidget implements
         mExpandHelper.setForceOneFinger(true);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // The widget is removed from heads-up, so let its
+        // bitmaps go back to the pool.
+        releaseBitmaps();
+    }
+
+    /**
+     * Resets the state left by animations, swiping and expanding,
+     * so the widget can be reused for another notification.
+     */
+    public void reset() {
+        animate().cancel();
+        clearAnimation();
+        setAlpha(1f);
+        setRotationX(0f);
+        setTranslationX(0f);
+
+        ViewGroup.LayoutParams lp = getLayoutParams();
+        if (lp != null) lp.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+
+        setNotification(null);
+    }
+
     /**
      * {@inheritDoc}
      */
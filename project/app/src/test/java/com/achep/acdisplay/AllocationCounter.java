@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by current thread, to check that
+ * hot paths do not allocate.
+ */
+public final class AllocationCounter {
+
+    private AllocationCounter() { /* empty */ }
+
+    /**
+     * @return {@code true} if allocations can be measured on this VM,
+     * {@code false} otherwise.
+     */
+    public static boolean isSupported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+    }
+
+    /**
+     * @return the number of bytes allocated by current thread, or {@code 0}
+     * if it can not be measured on this VM.
+     * @see #isSupported()
+     */
+    public static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            long threadId = Thread.currentThread().getId();
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay;
+
+import android.app.Notification;
+import android.support.annotation.NonNull;
+
+import com.achep.acdisplay.blacklist.AppConfig;
+import com.achep.acdisplay.notifications.OpenNotification;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Makes sure that identity checks used while searching through the lists
+ * of notifications and the blacklist do not allocate.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml")
+@RunWith(RobolectricTestRunner.class)
+public class IdentityComparisonTest {
+
+    private static final int ITERATIONS = 100000;
+
+    @Test
+    public void testAppConfigEquality() {
+        // Copies of the strings make sure that the contents are compared,
+        // not only the references of interned constants.
+        AppConfig a = new AppConfig("com.achep.headsup");
+        AppConfig b = new AppConfig(new String("com.achep.headsup"), true, true, false, false);
+        AppConfig c = new AppConfig(new String("com.achep.acdisplay"));
+        AppConfig d = new AppConfig("com.achep.headsup");
+        AppConfig empty = new AppConfig(null);
+
+        assertTrue(a.equals(b));
+        assertTrue(a.equals(d));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(c));
+        assertFalse(a.equals(empty));
+        assertFalse(empty.equals(a));
+        assertTrue(empty.equals(new AppConfig(null)));
+    }
+
+    @Test
+    public void testNotificationEquality() {
+        OpenNotification a = new TestNotification("com.achep.headsup|1|null");
+        OpenNotification b = new TestNotification(new StringBuilder("com.achep.headsup|")
+                .append(1).append("|null").toString());
+        OpenNotification c = new TestNotification(new String("com.achep.headsup|2|null"));
+        OpenNotification d = new TestNotification("com.achep.headsup|1|null");
+
+        assertTrue(a.hasIdenticalIds(b));
+        assertTrue(a.hasIdenticalIds(d));
+        assertFalse(a.hasIdenticalIds(c));
+        assertFalse(a.hasIdenticalIds(null));
+    }
+
+    @Test
+    public void testAppConfigComparisonDoesNotAllocate() {
+        final AppConfig a = new AppConfig("com.achep.headsup");
+        final AppConfig b = new AppConfig(new String("com.achep.headsup"));
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (!a.equals(b) || a.hashCode() != b.hashCode()) {
+                        throw new AssertionError();
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testNotificationComparisonDoesNotAllocate() {
+        final OpenNotification a = new TestNotification("com.achep.headsup|1|null");
+        final OpenNotification b = new TestNotification(new String("com.achep.headsup|1|null"));
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (!a.hasIdenticalIds(b)) {
+                        throw new AssertionError();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs given loop of {@link #ITERATIONS} comparisons and checks that it
+     * allocates less than one byte per comparison.
+     */
+    private static void assertNoAllocations(Runnable runnable) {
+        if (!AllocationCounter.isSupported()) {
+            // Can not measure allocations on this VM.
+            return;
+        }
+
+        runnable.run(); // warm up
+        long start = AllocationCounter.getAllocatedBytes();
+        runnable.run();
+        long allocated = AllocationCounter.getAllocatedBytes() - start;
+
+        assertTrue("Allocated " + allocated + " bytes per " + ITERATIONS + " comparisons.",
+                allocated < ITERATIONS);
+    }
+
+    /**
+     * Notification with a predefined key.
+     */
+    private static class TestNotification extends OpenNotification {
+
+        private final String mTestKey;
+
+        public TestNotification(String key) {
+            super(null, new Notification());
+            mTestKey = key;
+        }
+
+        @NonNull
+        @Override
+        protected String onCreateKey() {
+            return mTestKey;
+        }
+
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications.parser;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests and benchmarks of the notification parser's text utils.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml")
+@RunWith(RobolectricTestRunner.class)
+public class ParserUtilsTest {
+
+    private static final String REGEX_BLANK = "^(\\s*|)$";
+    private static final String REGEX_CLOCK = "^\\d{1,2}:\\d{1,2}(\\s?\\w{2}|)$";
+
+    /**
+     * Texts of the views of typical notification layouts: titles,
+     * messages, time stamps, counters and empty views.
+     */
+    private static final String[] LAYOUT_TEXTS = {
+            "John Doe", "Hey, are we still meeting tomorrow?", "12:45", "9:05 PM",
+            "", "  ", "3 new messages", "Downloading update.zip", "45%", "7:30am",
+            "Mom", "Call me when you get home \n", "1:2345", "10:00\tAM", "Reply",
+    };
+
+    /**
+     * Lines of a large inbox-style notification.
+     */
+    private static final String[] INBOX_LINES = new String[60];
+
+    static {
+        for (int i = 0; i < INBOX_LINES.length; i++) {
+            switch (i % 4) {
+                case 0:
+                    INBOX_LINES[i] = "Sender " + i + "   Subject of the message #" + i;
+                    break;
+                case 1:
+                    INBOX_LINES[i] = "  Sender " + i + "  Re: Subject\n\n\nquoted text \n";
+                    break;
+                case 2:
+                    INBOX_LINES[i] = "\n\t";
+                    break;
+                default:
+                    INBOX_LINES[i] = "Sender " + i + "\nFirst line\n\nSecond line ";
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveSpacesMatchesRegexes() {
+        for (String text : INBOX_LINES) {
+            assertEquals(removeSpacesRegex(text), Utils.removeSpaces(text).toString());
+        }
+
+        Random random = new Random(42);
+        String alphabet = "ab \t\r\n\n";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.setLength(0);
+            for (int j = random.nextInt(10); j > 0; j--) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            String text = sb.toString();
+            assertEquals(text, removeSpacesRegex(text), Utils.removeSpaces(text).toString());
+        }
+
+        // Clean text must not be copied.
+        String text = "Sender\nSubject";
+        assertTrue(text == Utils.removeSpaces(text));
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually.")
+    public void benchmarkRemoveSpaces() {
+        final int rounds = 2000;
+
+        // Warm up both implementations.
+        runRegexRemoveSpaces(rounds);
+        runRemoveSpaces(rounds);
+
+        long start = System.nanoTime();
+        int regexLength = runRegexRemoveSpaces(rounds);
+        long regexTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int length = runRemoveSpaces(rounds);
+        long time = System.nanoTime() - start;
+
+        System.out.println("Remove spaces: regex=" + regexTime / rounds + "ns"
+                + " single-pass=" + time / rounds + "ns per "
+                + INBOX_LINES.length + "-lines notification");
+
+        assertEquals(regexLength, length);
+        assertTrue(time < regexTime);
+    }
+
+    private static String removeSpacesRegex(String text) {
+        return text
+                .replaceAll("(\\s+$|^\\s+)", "")
+                .replaceAll("\n+", "\n");
+    }
+
+    private static int runRegexRemoveSpaces(int rounds) {
+        int length = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String text : INBOX_LINES) {
+                length += removeSpacesRegex(text).length();
+            }
+        }
+        return length;
+    }
+
+    private static int runRemoveSpaces(int rounds) {
+        int length = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String text : INBOX_LINES) {
+                length += Utils.removeSpaces(text).length();
+            }
+        }
+        return length;
+    }
+
+    @Test
+    public void testScannersMatchRegexes() {
+        for (String text : LAYOUT_TEXTS) {
+            assertEquals(text, text.matches(REGEX_BLANK), Utils.isBlank(text));
+            assertEquals(text, text.matches(REGEX_CLOCK), Utils.isClock(text));
+        }
+
+        // Fuzz the scanners with random texts made of
+        // interesting characters.
+        Random random = new Random(42);
+        String alphabet = "0123456789: \t\nAPMapm_x";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.setLength(0);
+            for (int j = random.nextInt(9); j > 0; j--) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            String text = sb.toString();
+            assertEquals(text, text.matches(REGEX_BLANK), Utils.isBlank(text));
+            assertEquals(text, text.matches(REGEX_CLOCK), Utils.isClock(text));
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually.")
+    public void benchmarkSubtextFilter() {
+        final int rounds = 20000;
+
+        // Warm up both implementations.
+        runRegexFilter(rounds);
+        runScannerFilter(rounds);
+
+        long start = System.nanoTime();
+        int regexCount = runRegexFilter(rounds);
+        long regexTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int scannerCount = runScannerFilter(rounds);
+        long scannerTime = System.nanoTime() - start;
+
+        System.out.println("Subtext filter: regex=" + regexTime / rounds + "ns"
+                + " scanner=" + scannerTime / rounds + "ns per layout");
+
+        assertEquals(regexCount, scannerCount);
+        assertTrue(scannerTime < regexTime);
+    }
+
+    private static int runRegexFilter(int rounds) {
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String text : LAYOUT_TEXTS) {
+                if (text.matches(REGEX_BLANK) || text.matches(REGEX_CLOCK)) count++;
+            }
+        }
+        return count;
+    }
+
+    private static int runScannerFilter(int rounds) {
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String text : LAYOUT_TEXTS) {
+                if (Utils.isBlank(text) || Utils.isClock(text)) count++;
+            }
+        }
+        return count;
+    }
+
+}